@@ -0,0 +1,96 @@
+package com.familymedia.imagegallery;
+
+import javax.imageio.ImageIO;
+import javax.swing.ImageIcon;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// The gallery's first implementations of the measured paths, copied from SimpleGallery as
+// it was before any of the performance work, so every benchmark has its starting point
+// next to it.
+final class Baseline {
+    private Baseline() {
+    }
+
+    // loadImages: data.txt line by line, split on '|'
+    static List<ImageInfo> loadImages(File dataFile) {
+        List<ImageInfo> images = new ArrayList<>();
+        if (dataFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(dataFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split("\\|");
+                    if (parts.length >= 4) {
+                        String album = parts.length > 4 ? parts[4] : "None";
+                        String tags = parts.length > 5 ? parts[5] : "";
+                        images.add(new ImageInfo(parts[0], parts[1], parts[2], parts[3], album, tags));
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return images;
+    }
+
+    // saveImages: the whole of data.txt rewritten after every change
+    static void saveImages(File dataFile, List<ImageInfo> images) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(dataFile))) {
+            for (ImageInfo info : images) {
+                writer.write(info.fileName + "|" + info.description + "|" + info.uploader + "|" +
+                             info.uploadDate + "|" + info.album + "|" + info.tags);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // createPhotoCard: full decode, then a smooth scale that ImageIcon waits for
+    static ImageIcon thumbnail(File file) throws IOException {
+        BufferedImage img = ImageIO.read(file);
+        Image scaled = img.getScaledInstance(350, 280, Image.SCALE_SMOOTH);
+        return new ImageIcon(scaled);
+    }
+
+    // searchPhotos: every photo, lower-casing both fields each time
+    static List<ImageInfo> searchPhotos(List<ImageInfo> images, String currentUser, String searchTerm) {
+        searchTerm = searchTerm.toLowerCase();
+        List<ImageInfo> results = new ArrayList<>();
+        for (ImageInfo img : images) {
+            if (img.uploader.equals(currentUser)) {
+                if (img.description.toLowerCase().contains(searchTerm) ||
+                    img.tags.toLowerCase().contains(searchTerm)) {
+                    results.add(img);
+                }
+            }
+        }
+        return results;
+    }
+
+    // accessShared: a scan for the token, then the expiry parsed with a new formatter.
+    // Returns null for an unknown or expired token.
+    static ShareInfo accessShared(List<ShareInfo> shares, String token) {
+        ShareInfo foundShare = null;
+        for (ShareInfo share : shares) {
+            if (share.token.equals(token)) {
+                foundShare = share;
+                break;
+            }
+        }
+        if (foundShare == null) return null;
+        if (!foundShare.expiresAt.equals("Never")) {
+            LocalDateTime expiry = LocalDateTime.parse(foundShare.expiresAt, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+            if (LocalDateTime.now().isAfter(expiry)) return null;
+        }
+        return foundShare;
+    }
+}
@@ -0,0 +1,176 @@
+package com.familymedia.imagegallery;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.List;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// Synthetic galleries for the benchmarks, shaped like real ones: three family members,
+// photos uploaded in batches over the years, a couple of dozen albums each, short
+// descriptions and tags from a small vocabulary. The same seed gives the same gallery,
+// so runs before and after a change compare.
+final class Datasets {
+    static final String[] OWNERS = {"John Doe", "Jane Smith", "Tom Wilson"};
+    static final long SEED = 42;
+
+    private static final String[] WORDS = {
+        "beach", "sunset", "birthday", "cake", "grandma", "grandpa", "garden", "snow", "ski", "lake",
+        "summer", "winter", "holiday", "christmas", "easter", "school", "graduation", "wedding", "dog", "cat",
+        "park", "picnic", "mountain", "hike", "camping", "forest", "river", "boat", "fishing", "city",
+        "museum", "concert", "football", "swimming", "pool", "party", "friends", "cousins", "baby", "first",
+        "steps", "dinner", "breakfast", "road", "trip", "car", "train", "airport", "paris", "rome",
+        "london", "zoo", "lion", "penguin", "rainbow", "storm", "autumn", "leaves", "pumpkin", "family"
+    };
+    private static final DateTimeFormatter UPLOAD_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private Datasets() {
+    }
+
+    static List<ImageInfo> images(int count, long seed) {
+        Random random = new Random(seed);
+        List<ImageInfo> images = new ArrayList<>(count);
+        LocalDateTime uploaded = LocalDateTime.of(2015, 1, 1, 9, 0);
+        String owner = OWNERS[0];
+        String album = "None";
+        String description = "";
+        for (int i = 0; i < count; i++) {
+            // A new upload batch every 20 photos or so: later, maybe by someone else, one album
+            if (i == 0 || random.nextInt(20) == 0) {
+                uploaded = uploaded.plusMinutes(1 + random.nextInt(3 * 24 * 60));
+                owner = OWNERS[random.nextInt(OWNERS.length)];
+                album = random.nextInt(4) == 0 ? "None" : "Album " + random.nextInt(25);
+                description = words(random, 3 + random.nextInt(6));
+            }
+            String fileName = new UUID(random.nextLong(), random.nextLong()) + "_IMG_" + (1000 + i) + ".jpg";
+            String blob = String.format("%016x%016x%016x%016x", random.nextLong(), random.nextLong(),
+                                        random.nextLong(), random.nextLong()) + ".jpg";
+            ImageInfo img = new ImageInfo(fileName, description, owner, uploaded.format(UPLOAD_FORMAT), album,
+                                          words(random, 1 + random.nextInt(4)).replace(' ', ','), blob);
+            img.width = 4000;
+            img.height = 3000;
+            img.orientation = 1;
+            images.add(img);
+        }
+        return images;
+    }
+
+    static List<AlbumInfo> albums(List<ImageInfo> images) {
+        Map<String, AlbumInfo> albums = new LinkedHashMap<>();
+        for (ImageInfo img : images) {
+            if (!img.album.equals("None")) {
+                albums.putIfAbsent(img.uploader + "|" + img.album, new AlbumInfo(img.album, "Photos", img.uploader));
+            }
+        }
+        return new ArrayList<>(albums.values());
+    }
+
+    // A third never expire, a third have expired, a third expire in the future
+    static List<ShareInfo> shares(int count, long seed) {
+        Random random = new Random(seed);
+        List<ShareInfo> shares = new ArrayList<>(count);
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < count; i++) {
+            String token = new UUID(random.nextLong(), random.nextLong()).toString().substring(0, 10).toUpperCase();
+            String expiresAt;
+            switch (i % 3) {
+                case 0:
+                    expiresAt = "Never";
+                    break;
+                case 1:
+                    expiresAt = now.minusDays(1 + random.nextInt(365)).format(UPLOAD_FORMAT);
+                    break;
+                default:
+                    expiresAt = now.plusDays(1 + random.nextInt(365)).format(UPLOAD_FORMAT);
+            }
+            shares.add(new ShareInfo(token, "Album " + random.nextInt(25), OWNERS[random.nextInt(OWNERS.length)],
+                                     now.minusDays(400).format(UPLOAD_FORMAT), expiresAt, "View Only",
+                                     random.nextInt(4) == 0 ? "secret" : ""));
+        }
+        return shares;
+    }
+
+    // data.txt, albums.txt and shares.txt as the gallery wrote them before the snapshot
+    static void writeTextFiles(Path dir, List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares)
+            throws IOException {
+        Files.createDirectories(dir);
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve("data.txt"), StandardCharsets.UTF_8)) {
+            for (ImageInfo info : images) {
+                writer.write(info.fileName + "|" + info.description + "|" + info.uploader + "|" +
+                             info.uploadDate + "|" + info.album + "|" + info.tags);
+                writer.newLine();
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve("albums.txt"), StandardCharsets.UTF_8)) {
+            for (AlbumInfo album : albums) {
+                writer.write(album.name + "|" + album.description + "|" + album.owner);
+                writer.newLine();
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(dir.resolve("shares.txt"), StandardCharsets.UTF_8)) {
+            for (ShareInfo share : shares) {
+                writer.write(share.token + "|" + share.albumName + "|" + share.sharedBy + "|" + share.createdAt + "|" +
+                             share.expiresAt + "|" + share.permission + "|" + share.password);
+                writer.newLine();
+            }
+        }
+    }
+
+    // A camera-sized JPEG with enough detail that it compresses like a photo
+    static File jpeg(Path dir, int width, int height, long seed) throws IOException {
+        Random random = new Random(seed);
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, new Color(40, 110, 190), width, height, new Color(240, 200, 120)));
+        g.fillRect(0, 0, width, height);
+        for (int i = 0; i < 400; i++) {
+            g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 120));
+            g.fillOval(random.nextInt(width), random.nextInt(height), 20 + random.nextInt(width / 8),
+                       20 + random.nextInt(height / 8));
+        }
+        g.dispose();
+        for (int i = 0; i < width * height / 8; i++) {
+            image.setRGB(random.nextInt(width), random.nextInt(height), random.nextInt(0x1000000));
+        }
+        File file = dir.resolve("photo-" + width + "x" + height + ".jpg").toFile();
+        ImageIO.write(image, "jpg", file);
+        return file;
+    }
+
+    static Path tempDir(String name) throws IOException {
+        return Files.createTempDirectory("gallery-bench-" + name);
+    }
+
+    static void delete(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        List<Path> paths = new ArrayList<>();
+        try (java.util.stream.Stream<Path> walk = Files.walk(dir)) {
+            walk.forEach(paths::add);
+        }
+        Collections.reverse(paths);
+        for (Path path : paths) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) text.append(' ');
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
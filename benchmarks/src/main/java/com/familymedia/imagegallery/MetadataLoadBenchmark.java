@@ -0,0 +1,128 @@
+package com.familymedia.imagegallery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// Start-up: reading the gallery metadata.
+//
+//   baselineLoadImages  data.txt parsed the way loadImages did
+//   parseTextFile       data.txt parsed with PipeRecordReader into the same records
+//   readSnapshot        the same records read from the binary snapshot, nothing more
+//   loadTextFiles       first start after upgrading: the text files read and converted
+//                       into a snapshot
+//   loadSnapshot        every later start: readSnapshot plus what the store builds on top
+//                       (search index, keyset index, album and share maps)
+//   replayJournal       changes since the last snapshot, one record per change
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class MetadataLoadBenchmark {
+    @Param({"10000", "100000"})
+    public int images;
+
+    private Path textDir;
+    private Path snapshotDir;
+    private Path journalDir;
+
+    @Setup(Level.Trial)
+    public void createGalleries() throws IOException {
+        List<ImageInfo> gallery = Datasets.images(images, Datasets.SEED);
+        List<AlbumInfo> albums = Datasets.albums(gallery);
+        List<ShareInfo> shares = Datasets.shares(images / 100, Datasets.SEED);
+
+        textDir = Datasets.tempDir("text");
+        Datasets.writeTextFiles(textDir, gallery, albums, shares);
+
+        snapshotDir = Datasets.tempDir("snapshot");
+        MetadataSnapshot.write(snapshotDir, gallery, albums, shares);
+
+        journalDir = Datasets.tempDir("journal");
+        MetadataSnapshot.write(journalDir, new ArrayList<>(), albums, shares);
+        GalleryStore store = new GalleryStore(journalDir.toString());
+        store.imagesAdded(gallery);
+        store.close();
+    }
+
+    // Otherwise only the first invocation would find nothing but text files
+    @Setup(Level.Invocation)
+    public void removeConvertedSnapshot() throws IOException {
+        for (Path path : MetadataSnapshot.generations(textDir)) {
+            Files.delete(path);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteGalleries() throws IOException {
+        Datasets.delete(textDir);
+        Datasets.delete(snapshotDir);
+        Datasets.delete(journalDir);
+    }
+
+    @Benchmark
+    public List<ImageInfo> baselineLoadImages() {
+        return Baseline.loadImages(textDir.resolve("data.txt").toFile());
+    }
+
+    @Benchmark
+    public List<ImageInfo> parseTextFile() throws IOException {
+        List<ImageInfo> loaded = new ArrayList<>();
+        try (PipeRecordReader reader = new PipeRecordReader(new FileInputStream(textDir.resolve("data.txt").toFile()),
+                Charset.defaultCharset(), "data.txt", false)) {
+            String[] parts;
+            while ((parts = reader.next()) != null) {
+                if (parts.length >= 4) {
+                    String album = parts.length > 4 ? parts[4] : "None";
+                    String tags = parts.length > 5 ? parts[5] : "";
+                    loaded.add(new ImageInfo(parts[0], parts[1], parts[2], parts[3], album, tags));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    @Benchmark
+    public List<ImageInfo> readSnapshot() throws IOException {
+        List<ImageInfo> loaded = new ArrayList<>();
+        MetadataSnapshot snapshot = MetadataSnapshot.open(MetadataSnapshot.generations(snapshotDir).get(0));
+        snapshot.readInto(loaded, new ArrayList<>(), new ArrayList<>());
+        return loaded;
+    }
+
+    @Benchmark
+    public List<ImageInfo> loadTextFiles() {
+        return load(textDir);
+    }
+
+    @Benchmark
+    public List<ImageInfo> loadSnapshot() {
+        return load(snapshotDir);
+    }
+
+    @Benchmark
+    public List<ImageInfo> replayJournal() {
+        return load(journalDir);
+    }
+
+    private static List<ImageInfo> load(Path dir) {
+        List<ImageInfo> loaded = new ArrayList<>();
+        GalleryStore store = new GalleryStore(dir.toString());
+        store.load(loaded, new ArrayList<>(), new ArrayList<>(), new SearchIndex());
+        store.close();
+        return loaded;
+    }
+}
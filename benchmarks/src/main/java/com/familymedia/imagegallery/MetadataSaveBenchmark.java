@@ -0,0 +1,74 @@
+package com.familymedia.imagegallery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// Saving after a change.
+//
+//   baselineSaveImages  saveImages: data.txt rewritten in full, after every change
+//   journalAppend       what a change costs now: one record appended (and forced to disk)
+//   writeSnapshot       compaction, once every GalleryStore.COMPACT_THRESHOLD changes
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class MetadataSaveBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int images;
+
+    private List<ImageInfo> gallery;
+    private List<AlbumInfo> albums;
+    private List<ShareInfo> shares;
+    private Path dir;
+    private GalleryStore store;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createGallery() throws IOException {
+        gallery = Datasets.images(images, Datasets.SEED);
+        albums = Datasets.albums(gallery);
+        shares = Datasets.shares(images / 100, Datasets.SEED);
+        dir = Datasets.tempDir("save");
+    }
+
+    @Setup(Level.Iteration)
+    public void openJournal() {
+        store = new GalleryStore(dir.toString());
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeJournal() throws IOException {
+        store.close();
+        Datasets.delete(dir.resolve("journal.log"));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteGallery() throws IOException {
+        Datasets.delete(dir);
+    }
+
+    @Benchmark
+    public void baselineSaveImages() {
+        Baseline.saveImages(dir.resolve("data.txt").toFile(), gallery);
+    }
+
+    @Benchmark
+    public void journalAppend() {
+        store.imageAdded(gallery.get(next++ % gallery.size()));
+    }
+
+    @Benchmark
+    public Path writeSnapshot() throws IOException {
+        return MetadataSnapshot.write(dir, gallery, albums, shares);
+    }
+}
@@ -0,0 +1,48 @@
+package com.familymedia.imagegallery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+
+// Searching one family member's photos.
+//
+//   baselineScan     searchPhotos: every photo in the gallery, substring match
+//   indexedSearch    SearchIndex: the postings of the words, intersected and ranked
+//   indexedTwoWords  two words, both must match
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class SearchBenchmark {
+    @Param({"10000", "100000"})
+    public int images;
+
+    private List<ImageInfo> gallery;
+    private SearchIndex index;
+
+    @Setup(Level.Trial)
+    public void createGallery() {
+        gallery = Datasets.images(images, Datasets.SEED);
+        index = SearchIndex.build(gallery);
+    }
+
+    @Benchmark
+    public List<ImageInfo> baselineScan() {
+        return Baseline.searchPhotos(gallery, Datasets.OWNERS[0], "beach");
+    }
+
+    @Benchmark
+    public List<ImageInfo> indexedSearch() {
+        return index.search(Datasets.OWNERS[0], "beach");
+    }
+
+    @Benchmark
+    public List<ImageInfo> indexedTwoWords() {
+        return index.search(Datasets.OWNERS[0], "beach sun");
+    }
+}
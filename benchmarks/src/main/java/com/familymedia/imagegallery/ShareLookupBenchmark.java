@@ -0,0 +1,52 @@
+package com.familymedia.imagegallery;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// Checking a share token, as "Access Shared" and the server's share endpoints do.
+//
+//   baselineAccessShared  accessShared: a scan of all shares, the expiry parsed each time
+//   registryLookup        ShareRegistry: a hash lookup and a comparison
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShareLookupBenchmark {
+    @Param({"100", "10000", "100000"})
+    public int shares;
+
+    private List<ShareInfo> list;
+    private ShareRegistry registry;
+    private String[] tokens;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void createShares() {
+        list = Datasets.shares(shares, Datasets.SEED);
+        registry = new ShareRegistry();
+        registry.rebuild(list);
+        // Tokens spread over the whole list, so the scan's average cost is measured
+        tokens = new String[1024];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = list.get((int) ((long) i * list.size() / tokens.length)).token;
+        }
+    }
+
+    @Benchmark
+    public Object baselineAccessShared() {
+        return Baseline.accessShared(list, tokens[next++ & (tokens.length - 1)]);
+    }
+
+    @Benchmark
+    public Object registryLookup() {
+        String token = tokens[next++ & (tokens.length - 1)];
+        ShareInfo share = registry.get(token);
+        return share == null || registry.isExpired(token, System.currentTimeMillis()) ? null : share;
+    }
+}
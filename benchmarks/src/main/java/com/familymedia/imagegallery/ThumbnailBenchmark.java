@@ -0,0 +1,55 @@
+package com.familymedia.imagegallery;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.swing.ImageIcon;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// One photo card's thumbnail from a 12 MP camera JPEG.
+//
+//   baselineDecodeAndScale  createPhotoCard: full decode, getScaledInstance(SCALE_SMOOTH)
+//   subsampledDecode        ImageDecoder: the reader skips pixels, then one small scale
+//   cachedThumbnail         ThumbnailStore: the card-sized JPEG written on first view
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx2g", "-Djava.awt.headless=true"})
+public class ThumbnailBenchmark {
+    private Path dir;
+    private File photo;
+    private ThumbnailStore thumbnails;
+
+    @Setup(Level.Trial)
+    public void createPhoto() throws IOException {
+        dir = Datasets.tempDir("thumbs");
+        photo = Datasets.jpeg(dir, 4000, 3000, Datasets.SEED);
+        thumbnails = new ThumbnailStore(dir.resolve("thumbs").toString());
+        thumbnails.load(photo);
+    }
+
+    @TearDown(Level.Trial)
+    public void deletePhoto() throws IOException {
+        Datasets.delete(dir);
+    }
+
+    @Benchmark
+    public ImageIcon baselineDecodeAndScale() throws IOException {
+        return Baseline.thumbnail(photo);
+    }
+
+    @Benchmark
+    public BufferedImage subsampledDecode() throws IOException {
+        return ImageDecoder.decodeThumbnail(photo, ThumbnailLoader.THUMB_WIDTH, ThumbnailLoader.THUMB_HEIGHT);
+    }
+
+    @Benchmark
+    public BufferedImage cachedThumbnail() throws IOException {
+        return thumbnails.load(photo);
+    }
+}
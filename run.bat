@@ -8,7 +8,7 @@ echo.
 cd /d "%~dp0"
 
 echo Compiling Java files...
-javac -encoding UTF-8 -source 8 -target 8 -d target/classes src/main/java/com/familymedia/imagegallery/SimpleLogin.java src/main/java/com/familymedia/imagegallery/SimpleGallery.java 2>nul
+javac -encoding UTF-8 -source 8 -target 8 -sourcepath src/main/java -d target/classes src/main/java/com/familymedia/imagegallery/SimpleLogin.java 2>nul
 
 if %errorlevel% equ 0 (
     echo Compilation successful!
@@ -0,0 +1,157 @@
+package com.familymedia.imagegallery;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+
+// Content-addressed photo storage. Each distinct file is stored once, as
+// blobs/<first two hex digits>/<sha-256>, and ImageInfo.blob names it. Any number of
+// images (several users uploading the same photo, say, or one photo saved as .jpg and
+// .jpeg) can share one blob. The name says nothing about the format; readers look at the
+// bytes, and ImageInfo.fileName keeps the original extension for downloads.
+//
+// Reference counts are not stored anywhere: they are rebuilt from the image list on
+// load, so they can never drift from the metadata. put() counts the new reference right
+// away, which keeps a blob from being deleted while an upload is still being prepared.
+//
+// Images from before blobs existed have no blob and still live in images/<fileName>,
+// and early blobs were named <sha-256>.<ext>; migrate() moves both over.
+class BlobStore {
+    private final Path blobsDir;
+    private final Path legacyDir;
+    private final Map<String, Integer> refs = new HashMap<>();
+
+    BlobStore(String blobsDir, String legacyDir) {
+        this.blobsDir = Paths.get(blobsDir);
+        this.legacyDir = Paths.get(legacyDir);
+    }
+
+    File file(ImageInfo info) {
+        return info.blob != null ? path(info.blob).toFile() : legacyDir.resolve(info.fileName).toFile();
+    }
+
+    Path path(String blob) {
+        return blobsDir.resolve(blob.substring(0, 2)).resolve(blob);
+    }
+
+    synchronized void rebuildRefs(List<ImageInfo> images) {
+        refs.clear();
+        for (ImageInfo img : images) {
+            if (img.blob != null) {
+                refs.merge(img.blob, 1, Integer::sum);
+            }
+        }
+    }
+
+    synchronized int refCount(String blob) {
+        return refs.getOrDefault(blob, 0);
+    }
+
+    static class Stored {
+        final String blob;
+        final StreamingCopy.Result content;
+
+        Stored(String blob, StreamingCopy.Result content) {
+            this.blob = blob;
+            this.content = content;
+        }
+    }
+
+    // Copies source into the store in one pass (hash and header probe included) and takes
+    // one reference
+    Stored put(Path source) throws IOException {
+        Files.createDirectories(blobsDir);
+        Path tmp = Files.createTempFile(blobsDir, "incoming", ".tmp");
+        try {
+            StreamingCopy.Result content = StreamingCopy.copy(source, tmp);
+            return new Stored(store(tmp, content.sha256), content);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Moves tmp to its content address unless those bytes are already stored
+    private synchronized String store(Path tmp, String blob) throws IOException {
+        Path target = path(blob);
+        if (!Files.exists(target)) {
+            Files.createDirectories(target.getParent());
+            Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        refs.merge(blob, 1, Integer::sum);
+        return blob;
+    }
+
+    // Drops one reference; the bytes are deleted with the last one. Returns true if the
+    // blob is gone, so the caller can drop thumbnails and cached images for it too.
+    synchronized boolean release(String blob) throws IOException {
+        int count = refs.getOrDefault(blob, 0) - 1;
+        if (count > 0) {
+            refs.put(blob, count);
+            return false;
+        }
+        refs.remove(blob);
+        Files.deleteIfExists(path(blob));
+        return true;
+    }
+
+    // Moves images that still live in images/ into the store, and renames blobs that still
+    // carry an extension, deleting files whose bytes are already there. Returns the images
+    // that got a new blob, for the caller to save; gone is told the old name of each file
+    // that went away, so thumbnails made from it can be dropped.
+    List<ImageInfo> migrate(List<ImageInfo> images, Consumer<String> gone) {
+        List<ImageInfo> migrated = new ArrayList<>();
+        Map<String, String> blobsByFile = new HashMap<>();
+        for (ImageInfo img : images) {
+            boolean legacy = img.blob == null;
+            if (!legacy && img.blob.indexOf('.') < 0) continue;
+            String oldName = legacy ? img.fileName : img.blob;
+            // The same file referenced twice is hashed (or renamed) once
+            String blob = blobsByFile.get(oldName);
+            if (blob == null) {
+                try {
+                    blob = legacy ? adopt(legacyDir.resolve(oldName)) : rename(oldName);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    continue;
+                }
+                if (blob == null) continue;
+                blobsByFile.put(oldName, blob);
+                gone.accept(oldName);
+            }
+            img.blob = blob;
+            migrated.add(img);
+        }
+        return migrated;
+    }
+
+    private String adopt(Path file) throws IOException {
+        if (!Files.exists(file)) return null;
+        String blob = StreamingCopy.hash(file);
+        moveTo(file, blob);
+        return blob;
+    }
+
+    // <sha-256>.<ext> to <sha-256>; a missing file keeps its name, like a missing legacy one
+    private String rename(String oldBlob) throws IOException {
+        Path file = path(oldBlob);
+        if (!Files.exists(file)) return null;
+        String blob = oldBlob.substring(0, oldBlob.indexOf('.'));
+        moveTo(file, blob);
+        return blob;
+    }
+
+    private synchronized void moveTo(Path file, String blob) throws IOException {
+        Path target = path(blob);
+        if (Files.exists(target)) {
+            Files.delete(file);
+        } else {
+            Files.createDirectories(target.getParent());
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.familymedia.imagegallery;
+
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.DefaultTableCellRenderer;
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+// Live view of the Metrics: count, p50, p99 and max of every timer, and the hit rates of
+// the two thumbnail caches. Refreshed every second while it is showing.
+class DiagnosticsPanel extends JPanel {
+    private static final int REFRESH_MS = 1000;
+
+    private final ImageCache imageCache;
+    private final Metrics.Counter diskHits = Metrics.counter("thumbnailStore.hits");
+    private final Metrics.Counter diskMisses = Metrics.counter("thumbnailStore.misses");
+    private final TimerTableModel timers = new TimerTableModel();
+    private final JLabel memoryCache = new JLabel();
+    private final JLabel diskCache = new JLabel();
+    private final javax.swing.Timer refresher = new javax.swing.Timer(REFRESH_MS, e -> update());
+
+    DiagnosticsPanel(ImageCache imageCache) {
+        super(new BorderLayout(0, 15));
+        this.imageCache = imageCache;
+        setBackground(Color.WHITE);
+        setBorder(BorderFactory.createEmptyBorder(15, 15, 5, 15));
+
+        JTable table = new JTable(timers);
+        table.setFont(new Font("Arial", Font.PLAIN, 12));
+        table.setRowHeight(22);
+        table.getTableHeader().setFont(new Font("Arial", Font.BOLD, 12));
+        DefaultTableCellRenderer numbers = new DefaultTableCellRenderer();
+        numbers.setHorizontalAlignment(SwingConstants.RIGHT);
+        for (int col = 1; col < timers.getColumnCount(); col++) {
+            table.getColumnModel().getColumn(col).setCellRenderer(numbers);
+        }
+        table.getColumnModel().getColumn(0).setPreferredWidth(160);
+
+        JPanel caches = new JPanel();
+        caches.setLayout(new BoxLayout(caches, BoxLayout.Y_AXIS));
+        caches.setOpaque(false);
+        JLabel title = new JLabel("Caches");
+        title.setFont(new Font("Arial", Font.BOLD, 14));
+        memoryCache.setFont(new Font("Arial", Font.PLAIN, 12));
+        diskCache.setFont(new Font("Arial", Font.PLAIN, 12));
+        caches.add(title);
+        caches.add(Box.createRigidArea(new Dimension(0, 5)));
+        caches.add(memoryCache);
+        caches.add(Box.createRigidArea(new Dimension(0, 3)));
+        caches.add(diskCache);
+
+        add(new JScrollPane(table), BorderLayout.CENTER);
+        add(caches, BorderLayout.SOUTH);
+        update();
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        refresher.start();
+    }
+
+    @Override
+    public void removeNotify() {
+        refresher.stop();
+        super.removeNotify();
+    }
+
+    void update() {
+        timers.update(Metrics.timers());
+        memoryCache.setText("Photo cache (memory): " + hitRate(imageCache.hitCount(), imageCache.missCount()) +
+                ", " + imageCache.sizeBytes() / (1024 * 1024) + " of " + imageCache.budgetBytes() / (1024 * 1024) +
+                " MB used, " + imageCache.evictionCount() + " evicted");
+        diskCache.setText("Thumbnails (disk): " + hitRate(diskHits.get(), diskMisses.get()));
+    }
+
+    private static String hitRate(long hits, long misses) {
+        long lookups = hits + misses;
+        if (lookups == 0) return "no lookups yet";
+        return String.format("%.1f%% hits (%d of %d)", 100.0 * hits / lookups, hits, lookups);
+    }
+
+    private static class TimerTableModel extends AbstractTableModel {
+        private static final String[] COLUMNS = {"Timer", "Count", "p50 (ms)", "p99 (ms)", "Max (ms)"};
+        private List<Object[]> rows = new ArrayList<>();
+
+        void update(List<Metrics.Timer> list) {
+            List<Object[]> updated = new ArrayList<>(list.size());
+            for (Metrics.Timer t : list) {
+                updated.add(new Object[] {
+                    t.name, t.count(), millis(t.percentile(0.50)), millis(t.percentile(0.99)), millis(t.max())
+                });
+            }
+            rows = updated;
+            fireTableDataChanged();
+        }
+
+        private static String millis(long nanos) {
+            return String.format("%.2f", Metrics.millis(nanos));
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return COLUMNS.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return COLUMNS[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows.get(row)[column];
+        }
+    }
+}
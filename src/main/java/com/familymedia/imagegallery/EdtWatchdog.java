@@ -0,0 +1,125 @@
+package com.familymedia.imagegallery;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Notices when the event dispatch thread stops processing events. A background thread
+// keeps posting a ping to the event queue; when one has not run after the threshold, the
+// EDT is stuck, and its stack is logged right away (the app may never recover), together
+// with the gallery action it is stuck in. Once the ping runs, the stall is logged again
+// with its full duration and recorded in the edt.stall timer (see Metrics).
+//
+// The threshold defaults to 1000 ms and can be changed with -Dgallery.edtWatchdog.ms=<n>;
+// 0 turns the watchdog off.
+class EdtWatchdog {
+    static final String THRESHOLD_PROPERTY = "gallery.edtWatchdog.ms";
+    private static final long MAX_PING_INTERVAL_MS = 100;
+    private static final String APP_PACKAGE = EdtWatchdog.class.getPackage().getName() + ".";
+    private static final Logger LOG = Logger.getLogger(EdtWatchdog.class.getName());
+    private static final Metrics.Timer STALL_TIMER = Metrics.timer("edt.stall");
+    private static boolean started = false;
+
+    private final long thresholdMillis;
+    private volatile Thread edt;
+
+    EdtWatchdog(long thresholdMillis) {
+        this.thresholdMillis = thresholdMillis;
+    }
+
+    // Once per process. Call it on the EDT, so a stall before the first ping is caught too.
+    static synchronized void startFromSystemProperties() {
+        if (started) return;
+        started = true;
+        long threshold = Long.getLong(THRESHOLD_PROPERTY, 1000);
+        if (threshold > 0) {
+            new EdtWatchdog(threshold).start();
+        }
+    }
+
+    void start() {
+        if (EventQueue.isDispatchThread()) {
+            edt = Thread.currentThread();
+        }
+        Thread watcher = new Thread(this::watch, "edt-watchdog");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watch() {
+        long interval = Math.max(1, Math.min(MAX_PING_INTERVAL_MS, thresholdMillis / 4));
+        try {
+            while (true) {
+                CountDownLatch ping = new CountDownLatch(1);
+                long posted = System.nanoTime();
+                EventQueue.invokeLater(() -> {
+                    edt = Thread.currentThread(); // Swing starts a new one after an uncaught exception
+                    ping.countDown();
+                });
+                if (!ping.await(thresholdMillis, TimeUnit.MILLISECONDS)) {
+                    Thread stuck = edt;
+                    StackTraceElement[] stack = stuck != null ? stuck.getStackTrace() : new StackTraceElement[0];
+                    String action = action(stack);
+                    LOG.warning("Event dispatch thread not responding for " + thresholdMillis + " ms, in " +
+                            action + format(stack));
+
+                    ping.await();
+                    long stalled = System.nanoTime() - posted;
+                    STALL_TIMER.record(stalled);
+                    LOG.warning("Event dispatch thread stall in " + action + " ended after " +
+                            TimeUnit.NANOSECONDS.toMillis(stalled) + " ms");
+                }
+                Thread.sleep(interval);
+            }
+        } catch (InterruptedException e) {
+            // Only happens when the process is shutting down
+        }
+    }
+
+    // The outermost gallery method handling the current event names the action, e.g.
+    // SimpleGallery.refreshGallery. Lambdas and anonymous listeners are passed over for the
+    // methods they call. A modal dialog runs a nested event loop, so the action that opened
+    // it is further down the stack and is added as "during ...".
+    static String action(StackTraceElement[] stack) {
+        List<String> levels = new ArrayList<>(); // Innermost event loop first
+        String current = null;
+        for (StackTraceElement frame : stack) {
+            if (frame.getClassName().equals("java.awt.EventDispatchThread")) {
+                if (current != null) levels.add(current);
+                current = null;
+            } else if (isActionFrame(frame)) {
+                current = simpleName(frame.getClassName()) + "." + frame.getMethodName();
+            }
+        }
+        if (current != null) levels.add(current);
+
+        if (levels.isEmpty()) return "Swing (no gallery code on the stack)";
+        StringBuilder sb = new StringBuilder(levels.get(0));
+        for (int i = 1; i < levels.size(); i++) {
+            sb.append(" during ").append(levels.get(i));
+        }
+        return sb.toString();
+    }
+
+    private static boolean isActionFrame(StackTraceElement frame) {
+        String className = frame.getClassName();
+        String method = frame.getMethodName();
+        return className.startsWith(APP_PACKAGE) && className.indexOf('$') < 0 &&
+               !method.startsWith("lambda$") && !method.startsWith("<");
+    }
+
+    private static String simpleName(String className) {
+        return className.substring(className.lastIndexOf('.') + 1);
+    }
+
+    private static String format(StackTraceElement[] stack) {
+        StringBuilder sb = new StringBuilder();
+        for (StackTraceElement frame : stack) {
+            sb.append("\n\tat ").append(frame);
+        }
+        return sb.toString();
+    }
+}
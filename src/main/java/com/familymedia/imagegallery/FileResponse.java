@@ -0,0 +1,128 @@
+package com.familymedia.imagegallery;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Sends (part of) a file as the response body, honouring a single-range Range header
+// (and If-Range, so a client resuming a download never mixes two versions of a file).
+//
+// When Tomcat offers sendfile, the file region is handed to the connector: the kernel
+// copies it from the page cache to the socket, and the request thread is free as soon as
+// the headers are set, which is what lets a few hundred viewers stream originals at once.
+// Otherwise the region goes through FileChannel.transferTo.
+class FileResponse {
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    // Serves bytes [offset, offset + length) of file, as if they were the whole resource.
+    // etag and lastModified describe that resource, for If-Range.
+    static void send(Path file, long offset, long length, String contentType, String etag, long lastModified,
+                     HttpServletRequest request, HttpServletResponse response) throws IOException {
+        long start = 0;
+        long end = length; // Exclusive
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setContentType(contentType);
+
+        String range = request.getHeader("Range");
+        if (range != null && !request.getMethod().equals("HEAD") && ifRangeMatches(request, etag, lastModified)) {
+            long[] parsed = parseRange(range, length);
+            if (parsed == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (parsed.length == 2) {
+                start = parsed[0];
+                end = parsed[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + (end - 1) + "/" + length);
+            }
+        }
+        response.setContentLengthLong(end - start);
+        if (request.getMethod().equals("HEAD") || end == start) return;
+
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, offset + start);
+            request.setAttribute(SENDFILE_END, offset + end);
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            OutputStream out = response.getOutputStream();
+            WritableByteChannel channel = Channels.newChannel(out);
+            long position = offset + start;
+            long remaining = end - start;
+            while (remaining > 0) {
+                long sent = in.transferTo(position, remaining, channel);
+                if (sent <= 0) break; // File shrank underneath us
+                position += sent;
+                remaining -= sent;
+            }
+            out.flush();
+        }
+    }
+
+    // A Range only applies if the client's copy is still the current one
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) return true;
+        ifRange = ifRange.trim();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals(etag); // Strong comparison, weak tags never match
+        }
+        long date;
+        try {
+            date = request.getDateHeader("If-Range");
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return date >= 0 && lastModified / 1000 == date / 1000;
+    }
+
+    // {start, end} for one satisfiable range, {} to send everything (no usable Range,
+    // or several ranges, which this server does not split into multipart), null if the
+    // range is outside the resource
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return new long[0];
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) return null;
+                start = Math.max(0, length - suffix);
+                end = length;
+            } else {
+                start = Long.parseLong(first);
+                if (start < 0) return new long[0];
+                if (last.isEmpty()) {
+                    end = length;
+                } else {
+                    long lastByte = Long.parseLong(last);
+                    if (lastByte < start) return new long[0]; // Malformed, so ignored
+                    end = Math.min(length, lastByte + 1);
+                }
+            }
+            if (start >= length || end <= start) return null;
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+}
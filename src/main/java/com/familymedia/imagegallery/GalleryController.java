@@ -0,0 +1,323 @@
+package com.familymedia.imagegallery;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLConnection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// HTTP endpoints of the headless server (GalleryServer). Family members sign in with
+// HTTP Basic and their desktop login and see only their own photos, like in the app:
+//
+//   GET /api/albums
+//   GET /api/photos?album=&after=&size=
+//   GET /api/photos/{id}/thumbnail          card-sized JPEG
+//   GET /api/photos/{id}/original           the stored file, Range requests supported
+//
+// Listings come in pages, oldest upload first. Each page has a "next" cursor to pass as
+// after= for the following one (null on the last page); pages are read straight from the
+// repository's indexes, so a deep page costs no more than the first.
+//
+// A share token works without a login, exactly as "Access Shared" checks it (unknown,
+// expired, wrong password), and opens the shared album only. The password goes in an
+// X-Share-Password header or a password parameter.
+//
+//   GET /api/shares/{token}?after=&size=
+//   GET /api/shares/{token}/photos/{id}/thumbnail
+//   GET /api/shares/{token}/photos/{id}/original
+//
+// The bytes behind a photo id never change, so originals and thumbnails carry the
+// content hash as ETag and may be cached for a year; a revalidation (If-None-Match or
+// If-Modified-Since) is answered with an empty 304. Listings change with every upload
+// and are cached only briefly. Everything is "private": it is per user or password
+// protected, so shared caches must not keep it.
+@RestController
+@RequestMapping("/api")
+class GalleryController {
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 200;
+    static final CacheControl PHOTO_CACHE = CacheControl.maxAge(365, TimeUnit.DAYS).cachePrivate().immutable();
+    static final CacheControl LISTING_CACHE = CacheControl.maxAge(10, TimeUnit.SECONDS).cachePrivate();
+    private static final Metrics.Timer SHARE_LOOKUP_TIMER = Metrics.timer("share.lookup");
+
+    private final GalleryService gallery;
+
+    GalleryController(GalleryService gallery) {
+        this.gallery = gallery;
+    }
+
+    @GetMapping("/albums")
+    ResponseEntity<List<Map<String, Object>>> albums(@RequestHeader(value = "Authorization", required = false) String authorization) {
+        String user = authenticate(authorization);
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (AlbumInfo album : gallery.repository().albums(user)) {
+            Map<String, Object> json = new LinkedHashMap<>();
+            json.put("name", album.name);
+            json.put("description", album.description);
+            result.add(json);
+        }
+        return ResponseEntity.ok().cacheControl(LISTING_CACHE).body(result);
+    }
+
+    @GetMapping("/photos")
+    ResponseEntity<Map<String, Object>> photos(@RequestHeader(value = "Authorization", required = false) String authorization,
+                                               @RequestParam(required = false) String album,
+                                               @RequestParam(required = false) String after,
+                                               @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        String user = authenticate(authorization);
+        if (album == null || album.isEmpty() || album.equals("All Photos")) album = null;
+        return ResponseEntity.ok().cacheControl(LISTING_CACHE).body(page(gallery.repository(), user, album, after, size));
+    }
+
+    @GetMapping("/photos/{id}/thumbnail")
+    void thumbnail(@RequestHeader(value = "Authorization", required = false) String authorization,
+                   @PathVariable String id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String user = authenticate(authorization);
+        sendThumbnail(ownPhoto(user, id), request, response);
+    }
+
+    @GetMapping("/photos/{id}/original")
+    void original(@RequestHeader(value = "Authorization", required = false) String authorization,
+                  @PathVariable String id, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String user = authenticate(authorization);
+        sendOriginal(ownPhoto(user, id), request, response);
+    }
+
+    @GetMapping("/shares/{token}")
+    ResponseEntity<Map<String, Object>> share(@PathVariable String token,
+                                              @RequestHeader(value = "X-Share-Password", required = false) String passwordHeader,
+                                              @RequestParam(required = false) String password,
+                                              @RequestParam(required = false) String after,
+                                              @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        MetadataRepository repository = gallery.repository();
+        ShareInfo share = openShare(repository, token, passwordHeader != null ? passwordHeader : password);
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("album", share.albumName);
+        json.put("sharedBy", share.sharedBy);
+        json.put("permission", share.permission);
+        json.put("expiresAt", share.expiresAt);
+        json.putAll(page(repository, share.sharedBy, share.albumName, after, size));
+        return ResponseEntity.ok().cacheControl(LISTING_CACHE).body(json);
+    }
+
+    @GetMapping("/shares/{token}/photos/{id}/thumbnail")
+    void sharedThumbnail(@PathVariable String token, @PathVariable String id,
+                         @RequestHeader(value = "X-Share-Password", required = false) String passwordHeader,
+                         @RequestParam(required = false) String password,
+                         HttpServletRequest request, HttpServletResponse response) throws IOException {
+        sendThumbnail(sharedPhoto(token, passwordHeader != null ? passwordHeader : password, id), request, response);
+    }
+
+    @GetMapping("/shares/{token}/photos/{id}/original")
+    void sharedOriginal(@PathVariable String token, @PathVariable String id,
+                        @RequestHeader(value = "X-Share-Password", required = false) String passwordHeader,
+                        @RequestParam(required = false) String password,
+                        HttpServletRequest request, HttpServletResponse response) throws IOException {
+        sendOriginal(sharedPhoto(token, passwordHeader != null ? passwordHeader : password, id), request, response);
+    }
+
+    static class ApiException extends RuntimeException {
+        final HttpStatus status;
+
+        ApiException(HttpStatus status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    @ExceptionHandler(ApiException.class)
+    ResponseEntity<Map<String, Object>> apiError(ApiException e) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("error", e.getMessage());
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(e.status);
+        if (e.status == HttpStatus.UNAUTHORIZED) {
+            response.header("WWW-Authenticate", "Basic realm=\"Family Gallery\", charset=\"UTF-8\"");
+        }
+        return response.body(json);
+    }
+
+    // HTTP Basic against the desktop logins; returns the name photos are stored under
+    private static String authenticate(String authorization) {
+        if (authorization != null && authorization.regionMatches(true, 0, "Basic ", 0, 6)) {
+            try {
+                String decoded = new String(Base64.getDecoder().decode(authorization.substring(6).trim()),
+                                            StandardCharsets.UTF_8);
+                int colon = decoded.indexOf(':');
+                if (colon > 0) {
+                    String user = SimpleLogin.authenticate(decoded.substring(0, colon), decoded.substring(colon + 1));
+                    if (user != null) return user;
+                }
+            } catch (IllegalArgumentException e) {
+                // Not base64; same as a wrong password
+            }
+        }
+        throw new ApiException(HttpStatus.UNAUTHORIZED, "Invalid username or password");
+    }
+
+    // The same checks, in the same order, as accessShared
+    private static ShareInfo openShare(MetadataRepository repository, String token, String password) {
+        long start = SHARE_LOOKUP_TIMER.start();
+        ShareInfo share = repository.share(token);
+        boolean expired = share != null && GalleryService.isExpired(share, System.currentTimeMillis());
+        SHARE_LOOKUP_TIMER.stop(start);
+        if (share == null) {
+            throw new ApiException(HttpStatus.NOT_FOUND, "Invalid or expired token");
+        }
+        if (expired) {
+            throw new ApiException(HttpStatus.GONE, "This share link has expired");
+        }
+        if (!share.password.isEmpty() && !share.password.equals(password)) {
+            throw new ApiException(HttpStatus.FORBIDDEN, "Incorrect password");
+        }
+        return share;
+    }
+
+    private ImageInfo ownPhoto(String user, String id) {
+        ImageInfo info = gallery.repository().image(id);
+        // Someone else's photo looks exactly like a missing one
+        if (info == null || !info.uploader.equals(user)) {
+            throw new ApiException(HttpStatus.NOT_FOUND, "No such photo");
+        }
+        return info;
+    }
+
+    private ImageInfo sharedPhoto(String token, String password, String id) {
+        MetadataRepository repository = gallery.repository();
+        ShareInfo share = openShare(repository, token, password);
+        ImageInfo info = repository.image(id);
+        if (info == null || !info.uploader.equals(share.sharedBy) || !info.album.equals(share.albumName)) {
+            throw new ApiException(HttpStatus.NOT_FOUND, "No such photo");
+        }
+        return info;
+    }
+
+    private static Map<String, Object> page(MetadataRepository repository, String owner, String album,
+                                            String after, int size) {
+        size = Math.max(1, Math.min(MAX_PAGE_SIZE, size));
+        // One more than asked for tells whether there is a next page
+        List<ImageInfo> photos = repository.imagesPage(owner, album, decodeCursor(after), size + 1);
+        boolean more = photos.size() > size;
+        if (more) photos = photos.subList(0, size);
+
+        List<Map<String, Object>> items = new ArrayList<>(photos.size());
+        for (ImageInfo info : photos) {
+            items.add(photoJson(info));
+        }
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("size", size);
+        json.put("total", repository.countImages(owner, album));
+        json.put("photos", items);
+        json.put("next", more ? encodeCursor(photos.get(photos.size() - 1)) : null);
+        return json;
+    }
+
+    // The cursor carries the keyset position itself, so it stays valid when the photo it
+    // points after is deleted
+    private static String encodeCursor(ImageInfo last) {
+        String position = last.uploadDate + "\n" + last.fileName;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ImageInfo decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) return null;
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int newline = position.indexOf('\n');
+            if (newline >= 0) {
+                return new ImageInfo(position.substring(newline + 1), "", "", position.substring(0, newline), "", "");
+            }
+        } catch (IllegalArgumentException e) {
+            // Falls through to the error below
+        }
+        throw new ApiException(HttpStatus.BAD_REQUEST, "Invalid page cursor");
+    }
+
+    private static Map<String, Object> photoJson(ImageInfo info) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("id", info.fileName);
+        json.put("description", info.description);
+        json.put("uploader", info.uploader);
+        json.put("uploadDate", info.uploadDate);
+        json.put("album", info.album);
+        json.put("tags", info.tags);
+        if (info.width > 0) {
+            json.put("width", info.width);
+            json.put("height", info.height);
+            json.put("orientation", info.orientation);
+        }
+        json.put("captureTime", info.captureTime);
+        return json;
+    }
+
+    private void sendThumbnail(ImageInfo info, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        File original = gallery.original(info);
+        if (!original.isFile()) {
+            throw new ApiException(HttpStatus.NOT_FOUND, "Photo file is missing");
+        }
+        // A thumbnail is a function of the original and the card size
+        String etag = "\"" + gallery.contentHash(info) + "-" + ThumbnailLoader.THUMB_WIDTH + "x" +
+                      ThumbnailLoader.THUMB_HEIGHT + "\"";
+        if (notModified(etag, original.lastModified(), request, response)) return;
+
+        Path thumb;
+        try {
+            thumb = gallery.thumbnail(info);
+        } catch (IOException e) {
+            throw new ApiException(HttpStatus.NOT_FOUND, "Photo file is unreadable");
+        }
+        long length = Files.size(thumb) - ThumbnailStore.HEADER_BYTES;
+        FileResponse.send(thumb, ThumbnailStore.HEADER_BYTES, length, "image/jpeg", etag, original.lastModified(),
+                          request, response);
+    }
+
+    private void sendOriginal(ImageInfo info, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        File file = gallery.original(info);
+        if (!file.isFile()) {
+            throw new ApiException(HttpStatus.NOT_FOUND, "Photo file is missing");
+        }
+        String etag = "\"" + gallery.contentHash(info) + "\"";
+        if (notModified(etag, file.lastModified(), request, response)) return;
+        FileResponse.send(file.toPath(), 0, file.length(), contentType(file), etag, file.lastModified(),
+                          request, response);
+    }
+
+    // Sets the caching headers; true if the client's copy is current and an empty 304 went out
+    private static boolean notModified(String etag, long lastModified, HttpServletRequest request,
+                                       HttpServletResponse response) {
+        response.setHeader("Cache-Control", PHOTO_CACHE.getHeaderValue());
+        return new ServletWebRequest(request, response).checkNotModified(etag, lastModified);
+    }
+
+    // Blobs are named by their hash alone, so the type is read from the first bytes; the
+    // extension only helps for photos still in images/
+    private static String contentType(File file) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            String type = URLConnection.guessContentTypeFromStream(in);
+            if (type != null && type.startsWith("image/")) return type;
+        }
+        String name = file.getName().toLowerCase();
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return "image/jpeg";
+        if (name.endsWith(".png")) return "image/png";
+        if (name.endsWith(".gif")) return "image/gif";
+        return "application/octet-stream";
+    }
+}
@@ -0,0 +1,19 @@
+package com.familymedia.imagegallery;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+
+// Headless mode: serves the same gallery_data the desktop app uses over HTTP, so family
+// members can browse from a phone. See GalleryController for the endpoints. Both can run
+// at once; the server only reads and picks up the desktop app's changes as they happen.
+//
+//   mvn spring-boot:run            or   java -jar target/image-gallery-1.0.0-exec.jar
+//
+// With gallery.metadata=h2, H2MetadataRepository opens its own H2 connection (as in the
+// desktop app), so Spring sets up no DataSource.
+@SpringBootApplication
+public class GalleryServer {
+    public static void main(String[] args) {
+        SpringApplication.run(GalleryServer.class, args);
+    }
+}
@@ -0,0 +1,160 @@
+package com.familymedia.imagegallery;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// The server's read-only access to the gallery metadata (see MetadataRepository).
+//
+// With the H2 backend every query goes to the database, which the desktop app writes
+// to as well. With the files backend the snapshot and journal are loaded into a read-only
+// GalleryStore like the desktop app loads them. Changes by the desktop app are picked up
+// on a background thread, never on a request's: records appended to the journal are
+// applied to the loaded store, and after a compaction (a new snapshot) a new store is
+// loaded and swapped in when it is complete.
+@Service
+class GalleryService {
+    // How often a request may start a look at the files for changes by the desktop app
+    private static final long CHECK_INTERVAL_MS = 2_000;
+    private static final Metrics.Timer RELOAD_TIMER = Metrics.timer("server.reload");
+
+    private final Path dataDir;
+    private final boolean files;
+    private final BlobStore blobStore;
+    private final ThumbnailStore thumbnailStore;
+    // SHA-256 of photos still in images/ (no blob name to take it from), keyed by path,
+    // size and modification time
+    private final Map<String, String> legacyHashes = new ConcurrentHashMap<>();
+    private final ExecutorService reloader = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "gallery-reload");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private volatile MetadataRepository repository;
+    private volatile long lastCheck;
+    // Only used by the reload thread (and the constructor, before it starts)
+    private GalleryStore store;
+    private String loadedSnapshotStamp;
+    private String loadedJournalStamp;
+
+    GalleryService(@Value("${gallery.data-dir:gallery_data}") String dataDir,
+                   @Value("${gallery.metadata:files}") String backend) {
+        this.dataDir = Paths.get(dataDir);
+        this.blobStore = new BlobStore(this.dataDir.resolve("blobs").toString(), this.dataDir.resolve("images").toString());
+        this.thumbnailStore = new ThumbnailStore(this.dataDir.resolve("thumbs").toString());
+        MetadataRepository opened = MetadataRepository.open(dataDir, backend);
+        this.files = opened instanceof GalleryStore;
+        if (files) {
+            opened.close();
+            lastCheck = System.currentTimeMillis();
+            reloadIfChanged();
+        } else {
+            repository = opened;
+        }
+    }
+
+    // The request goes on with the current state while the check runs
+    MetadataRepository repository() {
+        if (files && System.currentTimeMillis() - lastCheck >= CHECK_INTERVAL_MS && checking.compareAndSet(false, true)) {
+            lastCheck = System.currentTimeMillis();
+            reloader.execute(() -> {
+                try {
+                    reloadIfChanged();
+                } finally {
+                    checking.set(false);
+                }
+            });
+        }
+        return repository;
+    }
+
+    static boolean isExpired(ShareInfo share, long now) {
+        return now >= ShareRegistry.parseExpiry(share.expiresAt);
+    }
+
+    File original(ImageInfo info) {
+        return blobStore.file(info);
+    }
+
+    Path thumbnail(ImageInfo info) throws IOException {
+        return thumbnailStore.jpeg(blobStore.file(info));
+    }
+
+    // SHA-256 of the photo's bytes. Blobs are named after it (with an extension until the
+    // desktop app has migrated them); a photo from before blobs is hashed on first use.
+    String contentHash(ImageInfo info) throws IOException {
+        if (info.blob != null) {
+            int dot = info.blob.indexOf('.');
+            return dot < 0 ? info.blob : info.blob.substring(0, dot);
+        }
+        File file = blobStore.file(info);
+        String key = file.getPath() + "|" + file.length() + "|" + file.lastModified();
+        String hash = legacyHashes.get(key);
+        if (hash == null) {
+            hash = StreamingCopy.hash(file.toPath());
+            legacyHashes.put(key, hash);
+        }
+        return hash;
+    }
+
+    // The stamps are taken before reading, so a change made while reading is seen by the
+    // next check
+    private void reloadIfChanged() {
+        String snapshotStamp = snapshotStamp();
+        String journalStamp = fileStamp("journal.log");
+        if (store != null && snapshotStamp.equals(loadedSnapshotStamp)) {
+            if (journalStamp.equals(loadedJournalStamp)) return;
+            long start = RELOAD_TIMER.start();
+            if (store.replayAppended()) {
+                loadedJournalStamp = journalStamp;
+                RELOAD_TIMER.stop(start);
+                return;
+            }
+        }
+
+        // Read-only: the desktop app may have the journal open for appending, so the files
+        // are never rewritten from here. Closing the store right away leaves the loaded
+        // state to answer the queries.
+        long start = RELOAD_TIMER.start();
+        GalleryStore loaded = new GalleryStore(dataDir.toString(), true);
+        loaded.load(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new SearchIndex());
+        loaded.close();
+        store = loaded;
+        repository = loaded;
+        loadedSnapshotStamp = snapshotStamp;
+        loadedJournalStamp = journalStamp;
+        RELOAD_TIMER.stop(start);
+    }
+
+    @PreDestroy
+    void close() {
+        reloader.shutdownNow();
+        if (!files) repository.close();
+    }
+
+    // Changes when the desktop app compacts: a new snapshot, and the rotated journal
+    // appearing or going away
+    private String snapshotStamp() {
+        List<Path> generations = MetadataSnapshot.generations(dataDir);
+        return (generations.isEmpty() ? "-" : generations.get(0).getFileName().toString()) + "|" +
+               fileStamp("journal.log.old");
+    }
+
+    private String fileStamp(String name) {
+        File file = dataDir.resolve(name).toFile();
+        return file.length() + ":" + file.lastModified();
+    }
+}
@@ -0,0 +1,435 @@
+package com.familymedia.imagegallery;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+import static com.familymedia.imagegallery.PipeRecordReader.escape;
+
+// The "files" MetadataRepository: persistence for images, albums and shares. The state is kept as a binary snapshot
+// (see MetadataSnapshot); every change after the last snapshot is appended to
+// journal.log. Loading maps the snapshot and replays the journal on top of it, and
+// compact() folds the journal back into a fresh snapshot.
+//
+// The old pipe-delimited data.txt, albums.txt and shares.txt are only read when no
+// binary snapshot exists yet, and are converted once on that first load.
+//
+// Journal records: I+ / I- (image added or updated / removed), A+ (album added), S+ / S-
+// (share added / removed), with escaped fields (see PipeRecordReader). Replaying a record
+// twice has the same effect as replaying it once. An I+ record ends with the blob and the header fields (width, height, orientation,
+// capture time); records written before those existed just stop earlier.
+//
+// Page queries are answered from memory: load() files the images into a KeysetIndex,
+// which every later change keeps up to date. Queries may come from any thread.
+class GalleryStore implements MetadataRepository {
+    // Compact once this many records have piled up in the journal
+    static final int COMPACT_THRESHOLD = 500;
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("metadata.load");
+    private static final Metrics.Timer COMPACT_TIMER = Metrics.timer("metadata.compact");
+
+    private final Path dataDir;
+    private final boolean readOnly;
+    private final Path dataFile;
+    private final Path albumsFile;
+    private final Path sharesFile;
+    private final MetadataJournal journal;
+    private final KeysetIndex keyset = new KeysetIndex();
+    private final Map<String, AlbumInfo> albumsByName = new LinkedHashMap<>();
+    private final Map<String, ShareInfo> sharesByToken = new HashMap<>();
+
+    GalleryStore(String dataDir) {
+        this(dataDir, false);
+    }
+
+    // A read-only store loads the files as they are: it writes no snapshot, converts no old
+    // journal and refuses to append to it. For readers of a gallery that another process
+    // (the desktop app) writes to.
+    GalleryStore(String dataDir, boolean readOnly) {
+        this.dataDir = Paths.get(dataDir);
+        this.readOnly = readOnly;
+        this.dataFile = this.dataDir.resolve("data.txt");
+        this.albumsFile = this.dataDir.resolve("albums.txt");
+        this.sharesFile = this.dataDir.resolve("shares.txt");
+        this.journal = new MetadataJournal(this.dataDir.resolve("journal.log"), readOnly);
+    }
+
+    @Override
+    public synchronized void load(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares, SearchIndex searchIndex) {
+        long start = LOAD_TIMER.start();
+        if (!loadSnapshot(images, albums, shares, searchIndex)) {
+            loadTextImages(images);
+            loadTextAlbums(albums);
+            loadTextShares(shares);
+            if (!readOnly) {
+                try {
+                    MetadataSnapshot.write(dataDir, images, albums, shares);
+                } catch (IOException e) {
+                    // Still running from the text files; the next compaction writes the snapshot
+                    e.printStackTrace();
+                }
+            }
+            searchIndex.rebuild(images);
+        }
+        replayJournal(images, albums, shares, searchIndex);
+
+        keyset.rebuild(images);
+        albumsByName.clear();
+        for (AlbumInfo album : albums) {
+            albumsByName.put(album.name, album);
+        }
+        sharesByToken.clear();
+        for (ShareInfo share : shares) {
+            sharesByToken.put(share.token, share);
+        }
+        LOAD_TIMER.stop(start);
+    }
+
+    // Newest readable generation wins; a damaged one falls back to the one before it
+    private boolean loadSnapshot(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares,
+                                 SearchIndex searchIndex) {
+        for (Path path : MetadataSnapshot.generations(dataDir)) {
+            try {
+                MetadataSnapshot snapshot = MetadataSnapshot.open(path);
+                snapshot.readInto(images, albums, shares);
+                if (snapshot.hasSearchIndex()) {
+                    searchIndex.restore(images, snapshot.searchPostings());
+                } else {
+                    searchIndex.rebuild(images);
+                }
+                return true;
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                images.clear();
+                albums.clear();
+                shares.clear();
+            }
+        }
+        return false;
+    }
+
+    private void replayJournal(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares,
+                               SearchIndex searchIndex) {
+        List<String[]> records = new ArrayList<>();
+        journal.replay((record, reader) -> {
+            if (isValidRecord(record)) {
+                records.add(record);
+            } else {
+                reader.skip("\"" + record[0] + "\" record with " + record.length + " fields");
+            }
+        });
+        if (records.isEmpty()) return;
+
+        Map<String, ImageInfo> byName = new LinkedHashMap<>();
+        for (ImageInfo img : images) {
+            byName.put(img.fileName, img);
+        }
+        // Shares by token too: the expiry sweeper writes an S- record for every share it drops
+        Map<String, ShareInfo> byToken = new LinkedHashMap<>();
+        for (ShareInfo share : shares) {
+            byToken.put(share.token, share);
+        }
+        for (String[] parts : records) {
+            if (parts[0].equals("I+")) {
+                ImageInfo img = imageFromRecord(parts);
+                ImageInfo replaced = byName.put(parts[1], img);
+                if (replaced != null) searchIndex.remove(replaced);
+                searchIndex.add(img);
+            } else if (parts[0].equals("I-")) {
+                ImageInfo removed = byName.remove(parts[1]);
+                if (removed != null) searchIndex.remove(removed);
+            } else if (parts[0].equals("A+")) {
+                albums.removeIf(a -> a.name.equals(parts[1]));
+                albums.add(new AlbumInfo(parts[1], parts[2], parts[3]));
+            } else if (parts[0].equals("S+")) {
+                byToken.remove(parts[1]); // A replaced share moves to the end, as before
+                byToken.put(parts[1], new ShareInfo(parts[1], parts[2], parts[3], parts[4], parts[5], parts[6], parts[7]));
+            } else if (parts[0].equals("S-")) {
+                byToken.remove(parts[1]);
+            }
+        }
+        images.clear();
+        images.addAll(byName.values());
+        shares.clear();
+        shares.addAll(byToken.values());
+    }
+
+    // For a read-only store: applies what the writer appended to the journal since load().
+    // Returns false if that is not possible (the journal was compacted or rewritten
+    // meanwhile) and the store has to be loaded again. Photos are replaced, never changed,
+    // so what a query returned earlier stays as it was.
+    synchronized boolean replayAppended() {
+        return journal.replayAppended((parts, reader) -> {
+            if (!isValidRecord(parts)) {
+                reader.skip("\"" + parts[0] + "\" record with " + parts.length + " fields");
+            } else if (parts[0].equals("I+")) {
+                keyset.put(imageFromRecord(parts));
+            } else if (parts[0].equals("I-")) {
+                keyset.remove(parts[1]);
+            } else if (parts[0].equals("A+")) {
+                albumsByName.remove(parts[1]);
+                albumsByName.put(parts[1], new AlbumInfo(parts[1], parts[2], parts[3]));
+            } else if (parts[0].equals("S+")) {
+                sharesByToken.put(parts[1], new ShareInfo(parts[1], parts[2], parts[3], parts[4], parts[5], parts[6], parts[7]));
+            } else if (parts[0].equals("S-")) {
+                sharesByToken.remove(parts[1]);
+            }
+        });
+    }
+
+    private static ImageInfo imageFromRecord(String[] parts) {
+        String blob = parts.length >= 8 && !parts[7].isEmpty() ? parts[7] : null;
+        ImageInfo img = new ImageInfo(parts[1], parts[2], parts[3], parts[4], parts[5], parts[6], blob);
+        if (parts.length == 12) {
+            try {
+                img.width = Integer.parseInt(parts[8]);
+                img.height = Integer.parseInt(parts[9]);
+                img.orientation = Integer.parseInt(parts[10]);
+            } catch (NumberFormatException e) {
+                img.width = img.height = img.orientation = 0;
+            }
+            img.captureTime = parts[11].isEmpty() ? null : parts[11];
+        }
+        return img;
+    }
+
+    private static boolean isValidRecord(String[] parts) {
+        switch (parts[0]) {
+            case "I+": return parts.length == 7 || parts.length == 8 || parts.length == 12;
+            case "A+": return parts.length == 4;
+            case "S+": return parts.length == 8;
+            case "I-":
+            case "S-": return parts.length == 2;
+            default: return false;
+        }
+    }
+
+    // The old text files were written without escaping, so a '|' typed into a description
+    // shows up as extra fields; they are joined back into the description.
+    private void loadTextImages(List<ImageInfo> images) {
+        File file = dataFile.toFile();
+        if (!file.exists()) return;
+        try (PipeRecordReader reader = openText(file)) {
+            String[] parts;
+            while ((parts = reader.next()) != null) {
+                if (parts.length < 4) {
+                    reader.skip("expected 4 to 6 fields, found " + parts.length);
+                    continue;
+                }
+                if (parts.length > 6) {
+                    reader.warn(parts.length + " fields, the extra ones are taken as part of the description");
+                    parts = joinSurplus(parts, 1, 6);
+                }
+                String album = parts.length > 4 ? parts[4] : "None";
+                String tags = parts.length > 5 ? parts[5] : "";
+                images.add(new ImageInfo(parts[0], parts[1], parts[2], parts[3], album, tags));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void loadTextAlbums(List<AlbumInfo> albums) {
+        File file = albumsFile.toFile();
+        if (!file.exists()) return;
+        try (PipeRecordReader reader = openText(file)) {
+            String[] parts;
+            while ((parts = reader.next()) != null) {
+                if (parts.length < 3) {
+                    reader.skip("expected 3 fields, found " + parts.length);
+                    continue;
+                }
+                if (parts.length > 3) {
+                    reader.warn(parts.length + " fields, the extra ones are taken as part of the description");
+                    parts = joinSurplus(parts, 1, 3);
+                }
+                albums.add(new AlbumInfo(parts[0], parts[1], parts[2]));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void loadTextShares(List<ShareInfo> shares) {
+        File file = sharesFile.toFile();
+        if (!file.exists()) return;
+        try (PipeRecordReader reader = openText(file)) {
+            String[] parts;
+            while ((parts = reader.next()) != null) {
+                if (parts.length != 7) {
+                    reader.skip("expected 7 fields, found " + parts.length);
+                    continue;
+                }
+                shares.add(new ShareInfo(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]));
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // In the platform charset, as the old app wrote them
+    private static PipeRecordReader openText(File file) throws IOException {
+        return new PipeRecordReader(new FileInputStream(file), Charset.defaultCharset(), file.getName(), false);
+    }
+
+    // Joins the surplus fields after index back into that field, with the '|' between them
+    private static String[] joinSurplus(String[] parts, int index, int expected) {
+        int surplus = parts.length - expected;
+        StringBuilder sb = new StringBuilder(parts[index]);
+        for (int i = 1; i <= surplus; i++) {
+            sb.append(PipeRecordReader.DELIMITER).append(parts[index + i]);
+        }
+        String[] joined = new String[expected];
+        System.arraycopy(parts, 0, joined, 0, index);
+        joined[index] = sb.toString();
+        System.arraycopy(parts, index + surplus + 1, joined, index + 1, expected - index - 1);
+        return joined;
+    }
+
+    @Override
+    public synchronized void imageAdded(ImageInfo info) {
+        keyset.put(info);
+        append(imageRecord(info));
+    }
+
+    // One journal write (and one fsync) for a whole batch
+    @Override
+    public synchronized void imagesAdded(List<ImageInfo> batch) {
+        List<String> records = new ArrayList<>(batch.size());
+        for (ImageInfo info : batch) {
+            keyset.put(info);
+            records.add(imageRecord(info));
+        }
+        try {
+            journal.appendAll(records);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String imageRecord(ImageInfo info) {
+        return "I+|" + escape(info.fileName) + "|" + escape(info.description) + "|" + escape(info.uploader) + "|" +
+               escape(info.uploadDate) + "|" + escape(info.album) + "|" + escape(info.tags) + "|" + escape(info.blob) + "|" +
+               info.width + "|" + info.height + "|" + info.orientation + "|" + escape(info.captureTime);
+    }
+
+    @Override
+    public synchronized void imageRemoved(ImageInfo info) {
+        keyset.remove(info.fileName);
+        append("I-|" + escape(info.fileName));
+    }
+
+    @Override
+    public synchronized void albumAdded(AlbumInfo album) {
+        albumsByName.remove(album.name);
+        albumsByName.put(album.name, album);
+        append("A+|" + escape(album.name) + "|" + escape(album.description) + "|" + escape(album.owner));
+    }
+
+    @Override
+    public synchronized void shareAdded(ShareInfo share) {
+        sharesByToken.put(share.token, share);
+        append("S+|" + escape(share.token) + "|" + escape(share.albumName) + "|" + escape(share.sharedBy) + "|" +
+               escape(share.createdAt) + "|" + escape(share.expiresAt) + "|" + escape(share.permission) + "|" +
+               escape(share.password));
+    }
+
+    @Override
+    public synchronized void shareRemoved(String token) {
+        sharesByToken.remove(token);
+        append("S-|" + escape(token));
+    }
+
+    @Override
+    public synchronized void sharesRemoved(List<String> tokens) {
+        List<String> records = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            sharesByToken.remove(token);
+            records.add("S-|" + escape(token));
+        }
+        try {
+            journal.appendAll(records);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void append(String record) {
+        try {
+            journal.append(record);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return journal.size() >= COMPACT_THRESHOLD;
+    }
+
+    // Moves the journal aside so new changes start a fresh log. Call on the thread that
+    // mutates the lists, at the same moment the copies passed to compact() are taken.
+    @Override
+    public int beginCompaction() throws IOException {
+        return journal.rotate();
+    }
+
+    // Writes the given state as a new snapshot and drops the rotated journal.
+    // Safe to run on a background thread.
+    @Override
+    public void compact(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares, int rotatedRecords) {
+        try {
+            long start = COMPACT_TIMER.start();
+            MetadataSnapshot.write(dataDir, images, albums, shares);
+            COMPACT_TIMER.stop(start);
+            journal.finishCompaction(rotatedRecords);
+        } catch (IOException e) {
+            // The rotated journal is kept and replayed, so nothing is lost
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized List<ImageInfo> imagesPage(String owner, String album, ImageInfo after, int limit) {
+        return keyset.page(owner, album, after, limit);
+    }
+
+    @Override
+    public synchronized int countImages(String owner, String album) {
+        return keyset.count(owner, album);
+    }
+
+    @Override
+    public synchronized ImageInfo image(String fileName) {
+        return keyset.get(fileName);
+    }
+
+    @Override
+    public synchronized Set<String> blobs(String owner) {
+        return keyset.blobs(owner);
+    }
+
+    @Override
+    public synchronized List<AlbumInfo> albums(String owner) {
+        List<AlbumInfo> owned = new ArrayList<>();
+        for (AlbumInfo album : albumsByName.values()) {
+            if (album.owner.equals(owner)) owned.add(album);
+        }
+        return owned;
+    }
+
+    @Override
+    public synchronized ShareInfo share(String token) {
+        return sharesByToken.get(token);
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+    }
+}
@@ -0,0 +1,434 @@
+package com.familymedia.imagegallery;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+import java.util.List;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// The "h2" MetadataRepository: images, albums and shares in an embedded H2 database
+// (gallery_data/metadata.mv.db), over plain JDBC. Page queries run on the indexes below
+// and only read the rows they return, so the HTTP server's memory no longer grows with
+// the library. The desktop app still calls load() and keeps every photo (for search, blob
+// reference counts and the header backfill), so its memory grows as on the files backend.
+//
+// AUTO_SERVER lets the desktop app and the server use the database at the same time:
+// whoever opens it first serves it to the other. Every change is committed as it is made,
+// so there is nothing to compact.
+//
+// Queries build new ImageInfo objects from the rows, so callers tell photos apart by file
+// name, never by identity.
+//
+// On first open an empty database is filled from the snapshot and journal (or the old
+// text files). Those are left as they were, so -Dgallery.metadata=files still opens the
+// gallery as it was at that moment.
+class H2MetadataRepository implements MetadataRepository {
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS images (" +
+            "seq BIGINT AUTO_INCREMENT, file_name VARCHAR PRIMARY KEY, description VARCHAR, " +
+            "uploader VARCHAR NOT NULL, upload_date VARCHAR NOT NULL, album VARCHAR NOT NULL, tags VARCHAR, " +
+            "blob_name VARCHAR, width INT, height INT, orientation INT, capture_time VARCHAR)",
+        "CREATE INDEX IF NOT EXISTS images_by_uploader ON images(uploader, upload_date, file_name)",
+        "CREATE INDEX IF NOT EXISTS images_by_album ON images(uploader, album, upload_date, file_name)",
+        "CREATE INDEX IF NOT EXISTS images_by_upload_date ON images(upload_date, file_name)",
+        "CREATE TABLE IF NOT EXISTS albums (" +
+            "seq BIGINT AUTO_INCREMENT, name VARCHAR PRIMARY KEY, description VARCHAR, owner VARCHAR NOT NULL)",
+        "CREATE INDEX IF NOT EXISTS albums_by_owner ON albums(owner)",
+        "CREATE TABLE IF NOT EXISTS shares (" +
+            "seq BIGINT AUTO_INCREMENT, token VARCHAR PRIMARY KEY, album_name VARCHAR, shared_by VARCHAR NOT NULL, " +
+            "created_at VARCHAR, expires_at VARCHAR, permission VARCHAR, password VARCHAR)",
+        "CREATE INDEX IF NOT EXISTS shares_by_owner ON shares(shared_by)",
+        "CREATE TABLE IF NOT EXISTS settings (name VARCHAR PRIMARY KEY, setting VARCHAR)"
+    };
+
+    private static final String IMAGE_COLUMNS =
+        "file_name, description, uploader, upload_date, album, tags, blob_name, width, height, orientation, capture_time";
+    private static final String MERGE_IMAGE =
+        "MERGE INTO images (" + IMAGE_COLUMNS + ") KEY (file_name) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Keyset condition: strictly after (upload_date, file_name) of the previous page's last
+    // photo. H2 seeks the index to that row only for the row-value form, and reads pages in
+    // index order (instead of sorting the whole album) only when ORDER BY names the index
+    // columns from the first, so the page query repeats the equality columns there.
+    private static final String AFTER = " AND (upload_date, file_name) > (?, ?)";
+    // The same timers as the files backend, so the two can be compared
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("metadata.load");
+    private static final Metrics.Timer SAVE_TIMER = Metrics.timer("metadata.save");
+
+    private final Connection connection;
+
+    private H2MetadataRepository(Connection connection) {
+        this.connection = connection;
+    }
+
+    static H2MetadataRepository open(String dataDir) throws SQLException {
+        Path database = Paths.get(dataDir).toAbsolutePath().resolve("metadata");
+        Connection connection = DriverManager.getConnection("jdbc:h2:file:" + database + ";AUTO_SERVER=TRUE", "sa", "");
+        H2MetadataRepository repository = new H2MetadataRepository(connection);
+        try {
+            repository.createSchema();
+            repository.importFiles(dataDir);
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        return repository;
+    }
+
+    private void createSchema() throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : SCHEMA) {
+                statement.execute(sql);
+            }
+        }
+    }
+
+    private void importFiles(String dataDir) throws SQLException {
+        try (PreparedStatement query = connection.prepareStatement("SELECT setting FROM settings WHERE name = 'imported'");
+             ResultSet rs = query.executeQuery()) {
+            if (rs.next()) return;
+        }
+        List<ImageInfo> images = new ArrayList<>();
+        List<AlbumInfo> albums = new ArrayList<>();
+        List<ShareInfo> shares = new ArrayList<>();
+        GalleryStore files = new GalleryStore(dataDir, true);
+        files.load(images, albums, shares, new SearchIndex());
+        files.close();
+
+        connection.setAutoCommit(false);
+        try {
+            mergeImages(images);
+            for (AlbumInfo album : albums) {
+                mergeAlbum(album);
+            }
+            for (ShareInfo share : shares) {
+                insertShare(share);
+            }
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("INSERT INTO settings VALUES ('imported', CURRENT_TIMESTAMP)");
+            }
+            connection.commit();
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    @Override
+    public synchronized void load(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares,
+                                  SearchIndex searchIndex) {
+        long start = LOAD_TIMER.start();
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet rs = statement.executeQuery("SELECT " + IMAGE_COLUMNS + " FROM images ORDER BY seq")) {
+                while (rs.next()) {
+                    images.add(readImage(rs));
+                }
+            }
+            try (ResultSet rs = statement.executeQuery("SELECT name, description, owner FROM albums ORDER BY seq")) {
+                while (rs.next()) {
+                    albums.add(new AlbumInfo(rs.getString(1), rs.getString(2), rs.getString(3)));
+                }
+            }
+            try (ResultSet rs = statement.executeQuery(
+                    "SELECT token, album_name, shared_by, created_at, expires_at, permission, password FROM shares ORDER BY seq")) {
+                while (rs.next()) {
+                    shares.add(readShare(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        searchIndex.rebuild(images);
+        LOAD_TIMER.stop(start);
+    }
+
+    @Override
+    public void imageAdded(ImageInfo info) {
+        imagesAdded(Collections.singletonList(info));
+    }
+
+    // One transaction for a whole batch
+    @Override
+    public synchronized void imagesAdded(List<ImageInfo> batch) {
+        long start = SAVE_TIMER.start();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                mergeImages(batch);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        SAVE_TIMER.stop(start);
+    }
+
+    private void mergeImages(List<ImageInfo> batch) throws SQLException {
+        try (PreparedStatement merge = connection.prepareStatement(MERGE_IMAGE)) {
+            for (ImageInfo info : batch) {
+                merge.setString(1, info.fileName);
+                merge.setString(2, info.description);
+                merge.setString(3, info.uploader);
+                merge.setString(4, info.uploadDate);
+                merge.setString(5, info.album);
+                merge.setString(6, info.tags);
+                merge.setString(7, info.blob);
+                merge.setInt(8, info.width);
+                merge.setInt(9, info.height);
+                merge.setInt(10, info.orientation);
+                merge.setString(11, info.captureTime);
+                merge.addBatch();
+            }
+            merge.executeBatch();
+        }
+    }
+
+    @Override
+    public synchronized void imageRemoved(ImageInfo info) {
+        update("DELETE FROM images WHERE file_name = ?", info.fileName);
+    }
+
+    @Override
+    public synchronized void albumAdded(AlbumInfo album) {
+        long start = SAVE_TIMER.start();
+        try {
+            mergeAlbum(album);
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        SAVE_TIMER.stop(start);
+    }
+
+    private void mergeAlbum(AlbumInfo album) throws SQLException {
+        try (PreparedStatement merge = connection.prepareStatement(
+                "MERGE INTO albums (name, description, owner) KEY (name) VALUES (?, ?, ?)")) {
+            merge.setString(1, album.name);
+            merge.setString(2, album.description);
+            merge.setString(3, album.owner);
+            merge.executeUpdate();
+        }
+    }
+
+    // A replaced share moves to the end, as with the journal
+    @Override
+    public synchronized void shareAdded(ShareInfo share) {
+        long start = SAVE_TIMER.start();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                try (PreparedStatement delete = connection.prepareStatement("DELETE FROM shares WHERE token = ?")) {
+                    delete.setString(1, share.token);
+                    delete.executeUpdate();
+                }
+                insertShare(share);
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        SAVE_TIMER.stop(start);
+    }
+
+    private void insertShare(ShareInfo share) throws SQLException {
+        try (PreparedStatement insert = connection.prepareStatement(
+                "INSERT INTO shares (token, album_name, shared_by, created_at, expires_at, permission, password) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+            insert.setString(1, share.token);
+            insert.setString(2, share.albumName);
+            insert.setString(3, share.sharedBy);
+            insert.setString(4, share.createdAt);
+            insert.setString(5, share.expiresAt);
+            insert.setString(6, share.permission);
+            insert.setString(7, share.password);
+            insert.executeUpdate();
+        }
+    }
+
+    @Override
+    public void shareRemoved(String token) {
+        update("DELETE FROM shares WHERE token = ?", token);
+    }
+
+    @Override
+    public synchronized void sharesRemoved(List<String> tokens) {
+        long start = SAVE_TIMER.start();
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM shares WHERE token = ?")) {
+            for (String token : tokens) {
+                delete.setString(1, token);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        SAVE_TIMER.stop(start);
+    }
+
+    private synchronized void update(String sql, String key) {
+        long start = SAVE_TIMER.start();
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, key);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        SAVE_TIMER.stop(start);
+    }
+
+    @Override
+    public boolean needsCompaction() {
+        return false;
+    }
+
+    @Override
+    public int beginCompaction() throws IOException {
+        return 0;
+    }
+
+    @Override
+    public void compact(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares, int rotatedRecords) {
+    }
+
+    @Override
+    public synchronized List<ImageInfo> imagesPage(String owner, String album, ImageInfo after, int limit) {
+        String sql = "SELECT " + IMAGE_COLUMNS + " FROM images WHERE uploader = ?" +
+                     (album != null ? " AND album = ?" : "") + (after != null ? AFTER : "") +
+                     " ORDER BY uploader, " + (album != null ? "album, " : "") + "upload_date, file_name LIMIT ?";
+        List<ImageInfo> page = new ArrayList<>();
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            int i = 1;
+            query.setString(i++, owner);
+            if (album != null) query.setString(i++, album);
+            if (after != null) {
+                query.setString(i++, after.uploadDate);
+                query.setString(i++, after.fileName);
+            }
+            query.setInt(i, limit);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    page.add(readImage(rs));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized int countImages(String owner, String album) {
+        String sql = "SELECT COUNT(*) FROM images WHERE uploader = ?" + (album != null ? " AND album = ?" : "");
+        try (PreparedStatement query = connection.prepareStatement(sql)) {
+            query.setString(1, owner);
+            if (album != null) query.setString(2, album);
+            try (ResultSet rs = query.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    @Override
+    public synchronized ImageInfo image(String fileName) {
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT " + IMAGE_COLUMNS + " FROM images WHERE file_name = ?")) {
+            query.setString(1, fileName);
+            try (ResultSet rs = query.executeQuery()) {
+                return rs.next() ? readImage(rs) : null;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized Set<String> blobs(String owner) {
+        Set<String> blobs = new HashSet<>();
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT DISTINCT blob_name FROM images WHERE uploader = ? AND blob_name IS NOT NULL")) {
+            query.setString(1, owner);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    blobs.add(rs.getString(1));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return blobs;
+    }
+
+    @Override
+    public synchronized List<AlbumInfo> albums(String owner) {
+        List<AlbumInfo> albums = new ArrayList<>();
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT name, description, owner FROM albums WHERE owner = ? ORDER BY seq")) {
+            query.setString(1, owner);
+            try (ResultSet rs = query.executeQuery()) {
+                while (rs.next()) {
+                    albums.add(new AlbumInfo(rs.getString(1), rs.getString(2), rs.getString(3)));
+                }
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+        return albums;
+    }
+
+    @Override
+    public synchronized ShareInfo share(String token) {
+        try (PreparedStatement query = connection.prepareStatement(
+                "SELECT token, album_name, shared_by, created_at, expires_at, permission, password FROM shares WHERE token = ?")) {
+            query.setString(1, token);
+            try (ResultSet rs = query.executeQuery()) {
+                return rs.next() ? readShare(rs) : null;
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static ImageInfo readImage(ResultSet rs) throws SQLException {
+        ImageInfo img = new ImageInfo(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                                      rs.getString(5), rs.getString(6), rs.getString(7));
+        img.width = rs.getInt(8);
+        img.height = rs.getInt(9);
+        img.orientation = rs.getInt(10);
+        img.captureTime = rs.getString(11);
+        return img;
+    }
+
+    private static ShareInfo readShare(ResultSet rs) throws SQLException {
+        return new ShareInfo(rs.getString(1), rs.getString(2), rs.getString(3), rs.getString(4),
+                             rs.getString(5), rs.getString(6), rs.getString(7));
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.familymedia.imagegallery;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Shared in-memory cache of decoded images (thumbnails, viewer images). Entries are
+// weighed by the bytes their pixel buffers actually occupy and the least recently
+// used ones are evicted once the budget is exceeded.
+//
+// The budget defaults to 128 MB and can be changed with -Dgallery.imageCache.mb=<n>.
+class ImageCache {
+    private final long budgetBytes;
+    private final LinkedHashMap<String, BufferedImage> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long sizeBytes = 0;
+    // Shown in the diagnostics panel and over JMX (see Metrics)
+    private final Metrics.Counter hits = Metrics.counter("imageCache.hits");
+    private final Metrics.Counter misses = Metrics.counter("imageCache.misses");
+    private final Metrics.Counter evictions = Metrics.counter("imageCache.evictions");
+
+    ImageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    static ImageCache fromSystemProperties() {
+        long mb = Long.getLong("gallery.imageCache.mb", 128);
+        return new ImageCache(mb * 1024 * 1024);
+    }
+
+    // Keys are "<fileName>#<variant>" so everything derived from one photo can be
+    // dropped together when the photo is deleted.
+    static String key(String fileName, String variant) {
+        return fileName + "#" + variant;
+    }
+
+    synchronized BufferedImage get(String key) {
+        BufferedImage image = entries.get(key);
+        if (image != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+        }
+        return image;
+    }
+
+    synchronized void put(String key, BufferedImage image) {
+        long bytes = sizeOf(image);
+        if (bytes > budgetBytes) {
+            return; // Would evict everything else and still not fit
+        }
+
+        BufferedImage previous = entries.put(key, image);
+        if (previous != null) {
+            sizeBytes -= sizeOf(previous);
+        }
+        sizeBytes += bytes;
+
+        Iterator<Map.Entry<String, BufferedImage>> it = entries.entrySet().iterator();
+        while (sizeBytes > budgetBytes && it.hasNext()) {
+            Map.Entry<String, BufferedImage> eldest = it.next();
+            if (eldest.getKey().equals(key)) continue;
+            sizeBytes -= sizeOf(eldest.getValue());
+            it.remove();
+            evictions.increment();
+        }
+    }
+
+    // Removes every cached variant of the given photo
+    synchronized void invalidate(String fileName) {
+        String prefix = fileName + "#";
+        Iterator<Map.Entry<String, BufferedImage>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, BufferedImage> entry = it.next();
+            if (entry.getKey().startsWith(prefix)) {
+                sizeBytes -= sizeOf(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    long hitCount() {
+        return hits.get();
+    }
+
+    long missCount() {
+        return misses.get();
+    }
+
+    long evictionCount() {
+        return evictions.get();
+    }
+
+    synchronized long sizeBytes() {
+        return sizeBytes;
+    }
+
+    long budgetBytes() {
+        return budgetBytes;
+    }
+
+    synchronized int entryCount() {
+        return entries.size();
+    }
+
+    static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        long bytesPerElement = DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+        return (long) buffer.getSize() * buffer.getNumBanks() * bytesPerElement;
+    }
+}
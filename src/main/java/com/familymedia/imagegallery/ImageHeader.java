@@ -0,0 +1,224 @@
+package com.familymedia.imagegallery;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.*;
+import java.util.Iterator;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+
+// What a photo's header says about it: pixel size, EXIF orientation and capture time.
+// Parsed straight from the bytes (JPEG markers and EXIF, PNG chunks, the GIF screen
+// descriptor) without decoding any pixels, so it can run on every upload and be kept in
+// ImageInfo instead of being worked out again whenever a photo is shown.
+class ImageHeader {
+    final int width;
+    final int height;
+    final int orientation; // EXIF 1-8, 1 when the file does not say
+    final String captureTime; // yyyy-MM-dd HH:mm:ss, null if unknown
+
+    // Enough for the EXIF block and the frame header of nearly every camera JPEG
+    private static final int FIRST_READ = 64 * 1024;
+
+    ImageHeader(int width, int height, int orientation, String captureTime) {
+        this.width = width;
+        this.height = height;
+        this.orientation = orientation;
+        this.captureTime = captureTime;
+    }
+
+    void applyTo(ImageInfo info) {
+        info.width = width;
+        info.height = height;
+        info.orientation = orientation;
+        info.captureTime = captureTime;
+    }
+
+    // Reads the start of the file, usually just the first 64 KB. If the dimensions are
+    // further in than the upload header (a JPEG with big APP segments), an ImageIO reader
+    // finds them, still without decoding pixels.
+    static ImageHeader read(File file) throws IOException {
+        byte[] header = new byte[StreamingCopy.HEADER_BYTES];
+        int length = 0;
+        ImageHeader parsed = null;
+        try (InputStream in = new FileInputStream(file)) {
+            for (int want = FIRST_READ; length < header.length; want = header.length) {
+                int n = 0;
+                while (length < want && (n = in.read(header, length, want - length)) > 0) {
+                    length += n;
+                }
+                parsed = parse(header, length);
+                if (n < 0 || (parsed != null && parsed.width > 0 && parsed.height > 0)) break;
+            }
+        }
+        if (parsed != null && parsed.width > 0 && parsed.height > 0) {
+            return parsed;
+        }
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Not a supported image: " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new ImageHeader(reader.getWidth(0), reader.getHeight(0),
+                                       parsed != null ? parsed.orientation : 1,
+                                       parsed != null ? parsed.captureTime : null);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Returns null for formats it does not know; width and height are 0 if the header
+    // ends before them
+    static ImageHeader parse(byte[] data, int length) {
+        try {
+            if (length >= 4 && u8(data, 0) == 0xFF && u8(data, 1) == 0xD8) {
+                return parseJpeg(data, length);
+            }
+            if (length >= 24 && u8(data, 0) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+                return parsePng(data, length);
+            }
+            if (length >= 10 && data[0] == 'G' && data[1] == 'I' && data[2] == 'F') {
+                return new ImageHeader(u16(data, 6, false), u16(data, 8, false), 1, null);
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            // Corrupt offsets; treat like an unknown format
+        }
+        return null;
+    }
+
+    private static ImageHeader parseJpeg(byte[] data, int length) {
+        int width = 0;
+        int height = 0;
+        ImageHeader exif = null;
+        int pos = 2;
+        while (pos + 4 <= length) {
+            if (u8(data, pos) != 0xFF) break;
+            int marker = u8(data, pos + 1);
+            if (marker == 0xFF) { // Fill byte
+                pos++;
+                continue;
+            }
+            if (marker == 0xD8 || marker == 0x01 || (marker >= 0xD0 && marker <= 0xD7)) {
+                pos += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) break; // End of image / start of scan data
+            int segment = u16(data, pos + 2, true);
+            int body = pos + 4;
+            if (marker == 0xE1 && exif == null && segment >= 8 && body + 6 <= length
+                    && data[body] == 'E' && data[body + 1] == 'x' && data[body + 2] == 'i' && data[body + 3] == 'f') {
+                exif = parseTiff(data, body + 6, Math.min(length, pos + 2 + segment));
+            } else if (marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC) {
+                // Start of frame: precision, height, width
+                if (body + 5 <= length) {
+                    height = u16(data, body + 1, true);
+                    width = u16(data, body + 3, true);
+                }
+                break;
+            }
+            pos += 2 + segment;
+        }
+        return new ImageHeader(width, height, exif != null ? exif.orientation : 1, exif != null ? exif.captureTime : null);
+    }
+
+    private static ImageHeader parsePng(byte[] data, int length) {
+        int width = (int) u32(data, 16, true);
+        int height = (int) u32(data, 20, true);
+        ImageHeader exif = null;
+        int pos = 8;
+        while (pos + 8 <= length) {
+            int chunk = (int) u32(data, pos, true);
+            if (chunk < 0 || chunk > length) break;
+            String type = new String(data, pos + 4, 4, java.nio.charset.StandardCharsets.US_ASCII);
+            if (type.equals("eXIf")) {
+                exif = parseTiff(data, pos + 8, Math.min(length, pos + 8 + chunk));
+                break;
+            }
+            if (type.equals("IDAT") || type.equals("IEND")) break; // Metadata comes before the pixels
+            pos += 12 + chunk;
+        }
+        return new ImageHeader(width, height, exif != null ? exif.orientation : 1, exif != null ? exif.captureTime : null);
+    }
+
+    // EXIF is a little TIFF file: IFD0 has the orientation and points to the Exif IFD,
+    // which has the capture time. Offsets are relative to the TIFF header at start.
+    private static ImageHeader parseTiff(byte[] data, int start, int end) {
+        if (start + 8 > end) return null;
+        boolean bigEndian;
+        if (data[start] == 'M' && data[start + 1] == 'M') {
+            bigEndian = true;
+        } else if (data[start] == 'I' && data[start + 1] == 'I') {
+            bigEndian = false;
+        } else {
+            return null;
+        }
+        int orientation = 1;
+        String dateTime = null;
+        String original = null;
+        int exifIfd = -1;
+
+        int ifd = start + (int) u32(data, start + 4, bigEndian);
+        for (int pass = 0; pass < 2 && ifd > start && ifd + 2 <= end; pass++) {
+            int entries = u16(data, ifd, bigEndian);
+            for (int i = 0; i < entries; i++) {
+                int entry = ifd + 2 + 12 * i;
+                if (entry + 12 > end) break;
+                int tag = u16(data, entry, bigEndian);
+                if (pass == 0 && tag == 0x0112) {
+                    int value = u16(data, entry + 8, bigEndian);
+                    if (value >= 1 && value <= 8) orientation = value;
+                } else if (pass == 0 && tag == 0x0132) {
+                    dateTime = ascii(data, start, end, entry, bigEndian);
+                } else if (pass == 0 && tag == 0x8769) {
+                    exifIfd = start + (int) u32(data, entry + 8, bigEndian);
+                } else if (pass == 1 && tag == 0x9003) {
+                    original = ascii(data, start, end, entry, bigEndian);
+                }
+            }
+            ifd = exifIfd;
+        }
+        String captured = exifTime(original);
+        return new ImageHeader(0, 0, orientation, captured != null ? captured : exifTime(dateTime));
+    }
+
+    private static String ascii(byte[] data, int start, int end, int entry, boolean bigEndian) {
+        int count = (int) u32(data, entry + 4, bigEndian);
+        int pos = count <= 4 ? entry + 8 : start + (int) u32(data, entry + 8, bigEndian);
+        if (count <= 0 || pos < start || pos + count > end) return null;
+        int len = 0;
+        while (len < count && data[pos + len] != 0) len++;
+        return new String(data, pos, len, java.nio.charset.StandardCharsets.US_ASCII);
+    }
+
+    // "2023:07:14 18:03:55" -> "2023-07-14 18:03:55"; cameras without a clock write zeros
+    private static String exifTime(String value) {
+        if (value == null || value.length() < 19 || value.startsWith("0000")) return null;
+        for (int i = 0; i < 19; i++) {
+            char c = value.charAt(i);
+            boolean separator = i == 4 || i == 7 || i == 10 || i == 13 || i == 16;
+            if (separator ? (c != ':' && c != ' ' && c != '-') : (c < '0' || c > '9')) return null;
+        }
+        return value.substring(0, 4) + "-" + value.substring(5, 7) + "-" + value.substring(8, 10) + " " +
+               value.substring(11, 19);
+    }
+
+    private static int u8(byte[] data, int pos) {
+        return data[pos] & 0xFF;
+    }
+
+    private static int u16(byte[] data, int pos, boolean bigEndian) {
+        return bigEndian ? (u8(data, pos) << 8) | u8(data, pos + 1) : u8(data, pos) | (u8(data, pos + 1) << 8);
+    }
+
+    private static long u32(byte[] data, int pos, boolean bigEndian) {
+        long hi = u16(data, bigEndian ? pos : pos + 2, bigEndian);
+        long lo = u16(data, bigEndian ? pos + 2 : pos, bigEndian);
+        return (hi << 16) | lo;
+    }
+}
@@ -0,0 +1,250 @@
+package com.familymedia.imagegallery;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.List;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+// Imports photos that appear in a user's import folder (a phone backup target, say).
+// A WatchService reports changes; events are coalesced until the folder has been quiet
+// for a moment, and then one scan imports everything new as one batch through the
+// UploadPipeline. A full rescan every few minutes catches what the WatchService misses,
+// e.g. on network drives.
+//
+// Files are remembered by path, size and modification time in a small per-user list, so
+// a rescan does not even hash what was already imported. A file that changes is looked at
+// again; the gallery drops it if its bytes are already one of the user's photos.
+class ImportFolderWatcher {
+    // No events for this long means a copy burst is over
+    static final long QUIET_MS = 2_000;
+    // ...but a folder that never goes quiet is still scanned this often
+    static final long MAX_DELAY_MS = 30_000;
+    static final long RESCAN_MS = 5 * 60_000;
+
+    interface BatchHandler {
+        // Called on the watcher thread; returns once the batch is part of the gallery
+        void imported(UploadPipeline.Result result);
+    }
+
+    private final Path folder;
+    private final Path seenFile;
+    private final String owner;
+    private final BlobStore blobs;
+    private final ThumbnailStore thumbnails;
+    private final BatchHandler handler;
+    private final Set<String> seen = new HashSet<>();
+    private volatile boolean running = false;
+    private volatile UploadPipeline pipeline;
+    private Thread thread;
+
+    ImportFolderWatcher(Path folder, Path seenFile, String owner, BlobStore blobs, ThumbnailStore thumbnails,
+                        BatchHandler handler) {
+        this.folder = folder;
+        this.seenFile = seenFile;
+        this.owner = owner;
+        this.blobs = blobs;
+        this.thumbnails = thumbnails;
+        this.handler = handler;
+    }
+
+    Path getFolder() {
+        return folder;
+    }
+
+    void start() {
+        running = true;
+        thread = new Thread(this::run, "import-watcher");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.NORM_PRIORITY - 1);
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        UploadPipeline current = pipeline;
+        if (current != null) {
+            current.cancel();
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    // Per-user import folders, kept in one properties file next to the metadata
+    static Path configuredFolder(Path configFile, String user) {
+        String folder = loadConfig(configFile).getProperty(user);
+        return folder == null ? null : Paths.get(folder);
+    }
+
+    static void setConfiguredFolder(Path configFile, String user, Path folder) throws IOException {
+        Properties config = loadConfig(configFile);
+        if (folder == null) {
+            config.remove(user);
+        } else {
+            config.setProperty(user, folder.toAbsolutePath().toString());
+        }
+        Files.createDirectories(configFile.toAbsolutePath().getParent());
+        try (Writer out = Files.newBufferedWriter(configFile, StandardCharsets.UTF_8)) {
+            config.store(out, "Watched import folder per user");
+        }
+    }
+
+    private static Properties loadConfig(Path configFile) {
+        Properties config = new Properties();
+        if (Files.exists(configFile)) {
+            try (Reader in = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+                config.load(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return config;
+    }
+
+    private void run() {
+        loadSeen();
+        try (WatchService watcher = folder.getFileSystem().newWatchService()) {
+            registerAll(watcher, folder);
+            boolean dirty = true; // Pick up whatever arrived while the app was closed
+            long firstEvent = System.currentTimeMillis();
+            long nextRescan = System.currentTimeMillis() + RESCAN_MS;
+
+            while (running) {
+                long now = System.currentTimeMillis();
+                long wait = dirty
+                    ? Math.max(1, Math.min(QUIET_MS, firstEvent + MAX_DELAY_MS - now))
+                    : Math.max(1, nextRescan - now);
+                WatchKey key = watcher.poll(wait, java.util.concurrent.TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handleEvents(watcher, key);
+                    if (!dirty) {
+                        dirty = true;
+                        firstEvent = System.currentTimeMillis();
+                    }
+                    if (System.currentTimeMillis() - firstEvent < MAX_DELAY_MS) {
+                        continue;
+                    }
+                }
+                now = System.currentTimeMillis();
+                if (dirty || now >= nextRescan) {
+                    // Files still being written come back as pending and get another look
+                    dirty = scan();
+                    firstEvent = now;
+                    nextRescan = now + RESCAN_MS;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void handleEvents(WatchService watcher, WatchKey key) throws IOException {
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == ENTRY_CREATE) {
+                Path created = dir.resolve((Path) event.context());
+                if (Files.isDirectory(created)) {
+                    registerAll(watcher, created);
+                }
+            }
+        }
+        key.reset();
+    }
+
+    private static void registerAll(WatchService watcher, Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    // Imports every settled, not yet seen image. Returns true if some files were too
+    // fresh to take and the folder should be looked at again soon.
+    private boolean scan() throws IOException {
+        List<File> batch = new ArrayList<>();
+        List<String> keys = new ArrayList<>();
+        boolean[] pending = {false};
+        long settledBefore = System.currentTimeMillis() - QUIET_MS;
+
+        Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || !UploadPipeline.isImage(file.toFile())) {
+                    return FileVisitResult.CONTINUE;
+                }
+                String key = seenKey(file, attrs);
+                if (seen.contains(key)) {
+                    return FileVisitResult.CONTINUE;
+                }
+                if (attrs.lastModifiedTime().toMillis() > settledBefore) {
+                    pending[0] = true;
+                } else {
+                    batch.add(file.toFile());
+                    keys.add(key);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        if (batch.isEmpty() || !running) {
+            return pending[0];
+        }
+
+        pipeline = new UploadPipeline(blobs, thumbnails);
+        UploadPipeline.Result result = pipeline.run(batch, owner,
+            "Imported from " + folder.getFileName(), "", "None", (done, total, fileName) -> { });
+        pipeline = null;
+        if (result.cancelled) {
+            return pending[0];
+        }
+
+        handler.imported(result);
+        // Unreadable files are remembered too, so they are not retried until they change
+        rememberSeen(keys);
+        return pending[0];
+    }
+
+    private static String seenKey(Path file, BasicFileAttributes attrs) {
+        return attrs.size() + "\t" + attrs.lastModifiedTime().toMillis() + "\t" + file.toAbsolutePath();
+    }
+
+    private void loadSeen() {
+        seen.clear();
+        if (!Files.exists(seenFile)) return;
+        try (BufferedReader reader = Files.newBufferedReader(seenFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    seen.add(line);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void rememberSeen(List<String> keys) throws IOException {
+        seen.addAll(keys);
+        Files.createDirectories(seenFile.toAbsolutePath().getParent());
+        Files.write(seenFile, keys, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,138 @@
+package com.familymedia.imagegallery;
+
+import java.util.*;
+import java.util.List;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+
+// Photos sorted by (upload date, file name), per owner and per (owner, album): the
+// in-memory counterpart of the database indexes, so the flat-file backend answers keyset
+// page queries the same way. A page is a binary search for where the previous one ended.
+//
+// Buckets are sorted array lists: rebuilding is a single sort, and new uploads carry the
+// latest date, so they are appended at the end. Each photo is filed under the key it had
+// when it was put, which is what remove() looks for even if the ImageInfo changed since.
+class KeysetIndex {
+    private static class Entry implements Comparable<Entry> {
+        final String uploadDate;
+        final String fileName;
+        final String owner;
+        final String album;
+        final ImageInfo img;
+
+        Entry(ImageInfo img) {
+            this.uploadDate = img.uploadDate != null ? img.uploadDate : "";
+            this.fileName = img.fileName;
+            this.owner = img.uploader;
+            this.album = img.album;
+            this.img = img;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            int c = uploadDate.compareTo(other.uploadDate);
+            return c != 0 ? c : fileName.compareTo(other.fileName);
+        }
+    }
+
+    private final Map<String, Entry> byName = new HashMap<>();
+    private final Map<String, List<Entry>> byOwner = new HashMap<>();
+    private final Map<String, Map<String, List<Entry>>> byOwnerAlbum = new HashMap<>();
+
+    void rebuild(List<ImageInfo> images) {
+        byName.clear();
+        byOwner.clear();
+        byOwnerAlbum.clear();
+        for (ImageInfo img : images) {
+            byName.put(img.fileName, new Entry(img));
+        }
+        // In list order, which is upload order: nearly sorted already, and the sort is then
+        // close to linear (much faster than sorting the hash map's scrambled order)
+        List<Entry> sorted = new ArrayList<>(byName.size());
+        for (ImageInfo img : images) {
+            Entry entry = byName.get(img.fileName);
+            if (entry.img == img) sorted.add(entry); // A repeated name: the last one wins
+        }
+        Collections.sort(sorted);
+        // Distributing in sorted order leaves every bucket sorted
+        for (Entry entry : sorted) {
+            bucket(byOwner, entry.owner).add(entry);
+            bucket(byOwnerAlbum.computeIfAbsent(entry.owner, k -> new HashMap<>()), entry.album).add(entry);
+        }
+    }
+
+    void put(ImageInfo img) {
+        remove(img.fileName);
+        Entry entry = new Entry(img);
+        byName.put(img.fileName, entry);
+        insert(bucket(byOwner, entry.owner), entry);
+        insert(bucket(byOwnerAlbum.computeIfAbsent(entry.owner, k -> new HashMap<>()), entry.album), entry);
+    }
+
+    void remove(String fileName) {
+        Entry entry = byName.remove(fileName);
+        if (entry == null) return;
+        List<Entry> owned = byOwner.get(entry.owner);
+        owned.remove(Collections.binarySearch(owned, entry));
+        if (owned.isEmpty()) byOwner.remove(entry.owner);
+        Map<String, List<Entry>> albums = byOwnerAlbum.get(entry.owner);
+        List<Entry> inAlbum = albums.get(entry.album);
+        inAlbum.remove(Collections.binarySearch(inAlbum, entry));
+        if (inAlbum.isEmpty()) albums.remove(entry.album);
+        if (albums.isEmpty()) byOwnerAlbum.remove(entry.owner);
+    }
+
+    ImageInfo get(String fileName) {
+        Entry entry = byName.get(fileName);
+        return entry == null ? null : entry.img;
+    }
+
+    List<ImageInfo> page(String owner, String album, ImageInfo after, int limit) {
+        List<Entry> sorted = sorted(owner, album);
+        List<ImageInfo> page = new ArrayList<>();
+        if (sorted == null) return page;
+        int from = 0;
+        if (after != null) {
+            int found = Collections.binarySearch(sorted, new Entry(after));
+            from = found >= 0 ? found + 1 : -found - 1;
+        }
+        for (int i = from; i < sorted.size() && page.size() < limit; i++) {
+            page.add(sorted.get(i).img);
+        }
+        return page;
+    }
+
+    Set<String> blobs(String owner) {
+        Set<String> blobs = new HashSet<>();
+        List<Entry> owned = byOwner.get(owner);
+        if (owned == null) return blobs;
+        for (Entry entry : owned) {
+            if (entry.img.blob != null) blobs.add(entry.img.blob);
+        }
+        return blobs;
+    }
+
+    int count(String owner, String album) {
+        List<Entry> sorted = sorted(owner, album);
+        return sorted == null ? 0 : sorted.size();
+    }
+
+    private List<Entry> sorted(String owner, String album) {
+        if (album == null) return byOwner.get(owner);
+        Map<String, List<Entry>> albums = byOwnerAlbum.get(owner);
+        return albums == null ? null : albums.get(album);
+    }
+
+    private static List<Entry> bucket(Map<String, List<Entry>> buckets, String key) {
+        return buckets.computeIfAbsent(key, k -> new ArrayList<>());
+    }
+
+    private static void insert(List<Entry> sorted, Entry entry) {
+        if (sorted.isEmpty() || sorted.get(sorted.size() - 1).compareTo(entry) < 0) {
+            sorted.add(entry);
+        } else {
+            int at = Collections.binarySearch(sorted, entry);
+            sorted.add(at >= 0 ? at : -at - 1, entry);
+        }
+    }
+}
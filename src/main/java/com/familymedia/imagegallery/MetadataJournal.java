@@ -0,0 +1,240 @@
+package com.familymedia.imagegallery;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+// Append-only log of metadata changes, one record per line. Each append is flushed and
+// forced to disk, so a mutation costs one short write instead of a full file rewrite.
+//
+// Records are pipe-delimited with escaped fields (see PipeRecordReader), and every log
+// starts with the HEADER line. A log written before fields were escaped has no header; the
+// writer rewrites it in the escaped form the first time it replays it. A read-only journal
+// (another process reading what the writer appends) never touches the files and parses
+// such a log as it is.
+//
+// Compaction works in two steps: rotate() moves the current log aside (new records go to
+// a fresh file), and once the snapshot has been written finishCompaction() deletes the
+// rotated log. If the app stops in between, the rotated log is simply replayed again.
+//
+// A read-only journal can follow the log as the writer appends to it: replayAppended()
+// reads on from where the last replay stopped. A last line without its line break is left
+// for the next time, as the writer may still be writing it.
+class MetadataJournal {
+    private static final Metrics.Timer SAVE_TIMER = Metrics.timer("metadata.save");
+    // Lines starting with '#' are not records; the header also ends up in the middle of a
+    // log when rotate() appends one log to another
+    static final String HEADER = "#escaped";
+
+    private final Path file;
+    private final Path rotated;
+    private final boolean readOnly;
+    private FileOutputStream out;
+    private Writer writer;
+    private int records = 0;
+    // How far the current log has been read (read-only only); -1 if it cannot be followed
+    private long followedBytes = -1;
+    private int followedLines = 0;
+
+    MetadataJournal(Path file, boolean readOnly) {
+        this.file = file;
+        this.rotated = file.resolveSibling(file.getFileName() + ".old");
+        this.readOnly = readOnly;
+    }
+
+    // Hands every record that is not yet part of a snapshot to the handler, oldest first,
+    // along with the reader, which can report a record the handler cannot use
+    synchronized void replay(BiConsumer<String[], PipeRecordReader> handler) {
+        records = 0;
+        replay(rotated, handler);
+        followedBytes = Files.exists(file) ? -1 : 0;
+        followedLines = 0;
+        replay(file, handler);
+    }
+
+    // Hands the records appended to the log since the last replay to the handler (read-only
+    // only). Returns false, having read nothing, if the log was rotated or rewritten since,
+    // or is an old one read without escaping; the caller then replays everything again.
+    synchronized boolean replayAppended(BiConsumer<String[], PipeRecordReader> handler) {
+        if (!readOnly || followedBytes < 0) return false;
+        try {
+            long size = Files.exists(file) ? Files.size(file) : 0;
+            if (size < followedBytes) return false;
+            if (size == followedBytes) return true;
+            if (followedBytes == 0 && !hasHeader(file)) return false;
+            try (InputStream in = Files.newInputStream(file)) {
+                long skipped = 0;
+                while (skipped < followedBytes) {
+                    long n = in.skip(followedBytes - skipped);
+                    if (n <= 0) return false;
+                    skipped += n;
+                }
+                read(in, file, true, handler);
+            }
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    synchronized void append(String record) throws IOException {
+        appendAll(Collections.singletonList(record));
+    }
+
+    synchronized void appendAll(List<String> batch) throws IOException {
+        checkWritable();
+        long start = SAVE_TIMER.start();
+        if (writer == null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+            if (!fresh && !hasHeader(file)) {
+                escapeOldLog(file); // Not replayed yet; never mix the two forms in one log
+            }
+            out = new FileOutputStream(file.toFile(), true);
+            writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            if (fresh) {
+                writer.write(HEADER);
+                writer.write('\n');
+            }
+        }
+        for (String record : batch) {
+            writer.write(record);
+            writer.write('\n');
+        }
+        writer.flush();
+        out.getChannel().force(false);
+        records += batch.size();
+        SAVE_TIMER.stop(start);
+    }
+
+    synchronized int size() {
+        return records;
+    }
+
+    // Returns how many records were moved aside
+    synchronized int rotate() throws IOException {
+        checkWritable();
+        closeWriter();
+        int rotatedRecords = records;
+        if (!Files.exists(file)) return rotatedRecords;
+        if (Files.exists(rotated)) {
+            // An earlier compaction never finished; keep both logs in order
+            Files.write(rotated, Files.readAllBytes(file), StandardOpenOption.APPEND);
+            Files.delete(file);
+        } else {
+            Files.move(file, rotated, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return rotatedRecords;
+    }
+
+    synchronized void finishCompaction(int compactedRecords) throws IOException {
+        checkWritable();
+        Files.deleteIfExists(rotated);
+        records = Math.max(0, records - compactedRecords);
+    }
+
+    synchronized void close() {
+        closeWriter();
+    }
+
+    private void checkWritable() throws IOException {
+        if (readOnly) throw new IOException(file + " is opened read-only");
+    }
+
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        writer = null;
+        out = null;
+    }
+
+    private void replay(Path path, BiConsumer<String[], PipeRecordReader> handler) {
+        if (!Files.exists(path)) return;
+        try {
+            boolean escaped = hasHeader(path);
+            if (!escaped && !readOnly) {
+                try {
+                    escapeOldLog(path);
+                    escaped = true;
+                } catch (IOException e) {
+                    // E.g. another process has it open on Windows; appendAll() tries again
+                    e.printStackTrace();
+                }
+            }
+            try (InputStream in = Files.newInputStream(path)) {
+                read(in, path, escaped, handler);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Reads on from followedBytes when in is the current log (from the start otherwise)
+    private void read(InputStream in, Path path, boolean escaped, BiConsumer<String[], PipeRecordReader> handler)
+            throws IOException {
+        boolean following = readOnly && path.equals(file);
+        long start = following ? Math.max(0, followedBytes) : 0;
+        PipeRecordReader reader = new PipeRecordReader(in, StandardCharsets.UTF_8, path.getFileName().toString(), escaped);
+        if (following) reader.setFirstLine(followedLines + 1);
+        int lines = following ? followedLines : 0;
+        String[] record;
+        while ((record = reader.next()) != null) {
+            if (readOnly && !reader.complete()) break; // Still being written
+            lines = reader.line();
+            if (record[0].startsWith("#")) continue;
+            records++;
+            handler.accept(record, reader);
+        }
+        if (following) {
+            // An old log may still be rewritten by the writer, so it is not followed
+            followedBytes = escaped ? start + reader.completeBytes() : -1;
+            followedLines = lines;
+        }
+    }
+
+    private static PipeRecordReader open(Path path, boolean escaped) throws IOException {
+        return new PipeRecordReader(Files.newInputStream(path), StandardCharsets.UTF_8, path.getFileName().toString(), escaped);
+    }
+
+    private static boolean hasHeader(Path path) throws IOException {
+        byte[] expected = (HEADER + "\n").getBytes(StandardCharsets.UTF_8);
+        byte[] start = new byte[expected.length];
+        try (InputStream in = Files.newInputStream(path)) {
+            int n = 0;
+            int read;
+            while (n < start.length && (read = in.read(start, n, start.length - n)) > 0) {
+                n += read;
+            }
+            return n == start.length && Arrays.equals(expected, start);
+        }
+    }
+
+    // Rewrites a log from before escaping: its records are split on every '|' as they
+    // always were, then written back with escaped fields
+    private static void escapeOldLog(Path path) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (PipeRecordReader reader = open(path, false);
+             Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(HEADER);
+            out.write('\n');
+            String[] record;
+            while ((record = reader.next()) != null) {
+                for (int i = 0; i < record.length; i++) {
+                    if (i > 0) out.write(PipeRecordReader.DELIMITER);
+                    out.write(PipeRecordReader.escape(record[i]));
+                }
+                out.write('\n');
+            }
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,82 @@
+package com.familymedia.imagegallery;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// Where images, albums and shares are kept. Two backends:
+//
+//   files  GalleryStore: binary snapshot plus journal in gallery_data (the default)
+//   h2     H2MetadataRepository: an embedded H2 database, gallery_data/metadata.mv.db
+//
+// chosen with -Dgallery.metadata=files|h2. The first start on H2 copies the files over.
+//
+// Photo listings are keyset paginated in (upload date, file name) order: a page starts
+// right after the last photo of the previous one, so fetching page 1000 costs the same
+// as fetching page 1.
+interface MetadataRepository {
+    String BACKEND_PROPERTY = "gallery.metadata";
+
+    static MetadataRepository open(String dataDir) {
+        return open(dataDir, System.getProperty(BACKEND_PROPERTY, "files"));
+    }
+
+    static MetadataRepository open(String dataDir, String backend) {
+        if (backend.equalsIgnoreCase("h2")) {
+            try {
+                return H2MetadataRepository.open(dataDir);
+            } catch (Exception e) {
+                // No driver on the class path (run.bat) or the database is unusable
+                System.err.println("H2 metadata unavailable, using the files in " + dataDir);
+                e.printStackTrace();
+            }
+        }
+        return new GalleryStore(dataDir);
+    }
+
+    // Fills the lists and the search index with the current state
+    void load(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares, SearchIndex searchIndex);
+
+    // An image is stored again, with all its fields, after it changed
+    void imageAdded(ImageInfo info);
+
+    void imagesAdded(List<ImageInfo> batch);
+
+    void imageRemoved(ImageInfo info);
+
+    void albumAdded(AlbumInfo album);
+
+    void shareAdded(ShareInfo share);
+
+    void shareRemoved(String token);
+
+    void sharesRemoved(List<String> tokens);
+
+    // Housekeeping for backends that need it; see GalleryStore
+    boolean needsCompaction();
+
+    int beginCompaction() throws IOException;
+
+    void compact(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares, int rotatedRecords);
+
+    // Up to limit of the owner's photos (album null for all of them) that come after the
+    // photo after (null for the first page)
+    List<ImageInfo> imagesPage(String owner, String album, ImageInfo after, int limit);
+
+    int countImages(String owner, String album);
+
+    ImageInfo image(String fileName);
+
+    // Blob names of the owner's photos, to spot an import of bytes they already have
+    Set<String> blobs(String owner);
+
+    List<AlbumInfo> albums(String owner);
+
+    ShareInfo share(String token);
+
+    void close();
+}
@@ -0,0 +1,330 @@
+package com.familymedia.imagegallery;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// Binary snapshot of all metadata, read through a memory-mapped buffer.
+//
+// Every distinct string is stored once in a dictionary of UTF-8 entries delimited by an
+// offset table, and records are fixed-width rows of dictionary ids, so record i
+// can be read without touching the records before it and repeated values such as
+// uploader, album or date are decoded only once. Layout (big-endian ints):
+//
+//   magic, version, stringCount, imageCount, albumCount, shareCount
+//   termCount, postingCount                                          (version 2)
+//   stringOffsets[stringCount + 1]
+//   images[imageCount][6, 7 from version 3, 11 from version 4], albums[albumCount][3],
+//   shares[shareCount][7]
+//   termKeys[termCount], termStarts[termCount + 1]                    (version 2)
+//   postingDocs[postingCount], postingWeights[postingCount]           (version 2)
+//   string bytes
+//
+// Version 2 adds the SearchIndex postings (doc ids are image record numbers), so the
+// index is loaded rather than rebuilt. Version 1 files are still read; the index is
+// then built from the images and the next compaction writes version 2.
+// Version 3 adds the blob name as a seventh image field ("" for photos still in images/).
+// Version 4 adds the ImageHeader fields: width, height and orientation stored as plain
+// ints rather than dictionary ids, then the capture time ("" if unknown).
+//
+// Snapshots are written as numbered generations (metadata-000001.bin, ...) rather than
+// replaced in place, since a file that is still mapped cannot be overwritten on Windows.
+class MetadataSnapshot {
+    private static final int MAGIC = 0x464D4742; // "FMGB"
+    private static final int VERSION = 4;
+    private static final int V1_HEADER_BYTES = 24;
+    private static final int V2_HEADER_BYTES = 32;
+    private static final int IMAGE_FIELDS = 11;
+    private static final int ALBUM_FIELDS = 3;
+    private static final int SHARE_FIELDS = 7;
+
+    private final MappedByteBuffer buffer;
+    private final int version;
+    private final int imageFields;
+    private final int stringCount;
+    private final int imageCount;
+    private final int albumCount;
+    private final int shareCount;
+    private final int termCount;
+    private final int postingCount;
+    private final int offsetsPos;
+    private final int imagesPos;
+    private final int albumsPos;
+    private final int sharesPos;
+    private final int termsPos;
+    private final int postingsPos;
+    private final int stringsPos;
+    private final String[] decoded;
+
+    private MetadataSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < V1_HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a gallery metadata snapshot");
+        }
+        version = buffer.getInt(4);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported metadata snapshot version " + version);
+        }
+        imageFields = version >= 4 ? IMAGE_FIELDS : version == 3 ? 7 : 6;
+        stringCount = buffer.getInt(8);
+        imageCount = buffer.getInt(12);
+        albumCount = buffer.getInt(16);
+        shareCount = buffer.getInt(20);
+        termCount = version >= 2 ? buffer.getInt(24) : 0;
+        postingCount = version >= 2 ? buffer.getInt(28) : 0;
+
+        offsetsPos = version >= 2 ? V2_HEADER_BYTES : V1_HEADER_BYTES;
+        imagesPos = offsetsPos + 4 * (stringCount + 1);
+        albumsPos = imagesPos + 4 * imageFields * imageCount;
+        sharesPos = albumsPos + 4 * ALBUM_FIELDS * albumCount;
+        termsPos = sharesPos + 4 * SHARE_FIELDS * shareCount;
+        postingsPos = termsPos + 4 * (2 * termCount + (version >= 2 ? 1 : 0));
+        stringsPos = postingsPos + 8 * postingCount;
+        if (stringsPos > buffer.limit() || stringsPos + buffer.getInt(offsetsPos + 4 * stringCount) != buffer.limit()) {
+            throw new IOException("Truncated metadata snapshot");
+        }
+        decoded = new String[stringCount];
+    }
+
+    static MetadataSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new MetadataSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    int imageCount() {
+        return imageCount;
+    }
+
+    int albumCount() {
+        return albumCount;
+    }
+
+    int shareCount() {
+        return shareCount;
+    }
+
+    ImageInfo image(int i) {
+        int pos = imagesPos + 4 * imageFields * i;
+        String blob = imageFields > 6 ? field(pos, 6) : "";
+        ImageInfo img = new ImageInfo(field(pos, 0), field(pos, 1), field(pos, 2), field(pos, 3), field(pos, 4),
+                                      field(pos, 5), blob.isEmpty() ? null : blob);
+        if (imageFields > 7) {
+            img.width = buffer.getInt(pos + 4 * 7);
+            img.height = buffer.getInt(pos + 4 * 8);
+            img.orientation = buffer.getInt(pos + 4 * 9);
+            String captureTime = field(pos, 10);
+            img.captureTime = captureTime.isEmpty() ? null : captureTime;
+        }
+        return img;
+    }
+
+    AlbumInfo album(int i) {
+        int pos = albumsPos + 4 * ALBUM_FIELDS * i;
+        return new AlbumInfo(field(pos, 0), field(pos, 1), field(pos, 2));
+    }
+
+    ShareInfo share(int i) {
+        int pos = sharesPos + 4 * SHARE_FIELDS * i;
+        return new ShareInfo(field(pos, 0), field(pos, 1), field(pos, 2), field(pos, 3),
+                             field(pos, 4), field(pos, 5), field(pos, 6));
+    }
+
+    private String field(int recordPos, int index) {
+        return string(buffer.getInt(recordPos + 4 * index));
+    }
+
+    // Dictionary strings are decoded on first use and then shared by every record using them
+    String string(int id) {
+        String s = decoded[id];
+        if (s == null) {
+            int start = buffer.getInt(offsetsPos + 4 * id);
+            int end = buffer.getInt(offsetsPos + 4 * (id + 1));
+            byte[] bytes = new byte[end - start];
+            // Java 8 has no absolute bulk get, so read through a duplicate
+            ByteBuffer view = buffer.duplicate();
+            view.position(stringsPos + start);
+            view.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            decoded[id] = s;
+        }
+        return s;
+    }
+
+    boolean hasSearchIndex() {
+        return version >= 2;
+    }
+
+    // Search postings keyed by owner + '\0' + token, doc ids being image record numbers
+    SortedMap<String, SearchIndex.Postings> searchPostings() {
+        TreeMap<String, SearchIndex.Postings> postings = new TreeMap<>();
+        IntBuffer ints = buffer.duplicate().asIntBuffer();
+        int startsPos = termsPos + 4 * termCount;
+        int weightsPos = postingsPos + 4 * postingCount;
+        for (int t = 0; t < termCount; t++) {
+            int start = buffer.getInt(startsPos + 4 * t);
+            int size = buffer.getInt(startsPos + 4 * (t + 1)) - start;
+            int[] docs = new int[size];
+            int[] weights = new int[size];
+            ints.position((postingsPos >> 2) + start);
+            ints.get(docs);
+            ints.position((weightsPos >> 2) + start);
+            ints.get(weights);
+            postings.put(string(buffer.getInt(termsPos + 4 * t)), new SearchIndex.Postings(docs, weights, size));
+        }
+        return postings;
+    }
+
+    void readInto(List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares) {
+        for (int i = 0; i < imageCount; i++) images.add(image(i));
+        for (int i = 0; i < albumCount; i++) albums.add(album(i));
+        for (int i = 0; i < shareCount; i++) shares.add(share(i));
+    }
+
+    // Snapshot generations in the data directory, newest first
+    static List<Path> generations(Path dataDir) {
+        List<Path> found = new ArrayList<>();
+        if (!Files.isDirectory(dataDir)) return found;
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(dataDir, "metadata-*.bin")) {
+            for (Path p : dir) {
+                found.add(p);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        found.sort(Comparator.comparing((Path p) -> p.getFileName().toString()).reversed());
+        return found;
+    }
+
+    // Writes a new generation and removes the older ones (where the OS lets us)
+    static Path write(Path dataDir, List<ImageInfo> images, List<AlbumInfo> albums, List<ShareInfo> shares) throws IOException {
+        Files.createDirectories(dataDir);
+        List<Path> existing = generations(dataDir);
+        long generation = existing.isEmpty() ? 1 : generationOf(existing.get(0)) + 1;
+        Path target = dataDir.resolve(String.format("metadata-%06d.bin", generation));
+        Path tmp = dataDir.resolve(target.getFileName() + ".tmp");
+
+        Map<String, Integer> ids = new LinkedHashMap<>();
+        int[] imageRecords = new int[images.size() * IMAGE_FIELDS];
+        int k = 0;
+        for (ImageInfo img : images) {
+            imageRecords[k++] = id(ids, img.fileName);
+            imageRecords[k++] = id(ids, img.description);
+            imageRecords[k++] = id(ids, img.uploader);
+            imageRecords[k++] = id(ids, img.uploadDate);
+            imageRecords[k++] = id(ids, img.album);
+            imageRecords[k++] = id(ids, img.tags);
+            imageRecords[k++] = id(ids, img.blob);
+            imageRecords[k++] = img.width;
+            imageRecords[k++] = img.height;
+            imageRecords[k++] = img.orientation;
+            imageRecords[k++] = id(ids, img.captureTime);
+        }
+        int[] albumIds = new int[albums.size() * ALBUM_FIELDS];
+        k = 0;
+        for (AlbumInfo album : albums) {
+            albumIds[k++] = id(ids, album.name);
+            albumIds[k++] = id(ids, album.description);
+            albumIds[k++] = id(ids, album.owner);
+        }
+        int[] shareIds = new int[shares.size() * SHARE_FIELDS];
+        k = 0;
+        for (ShareInfo share : shares) {
+            shareIds[k++] = id(ids, share.token);
+            shareIds[k++] = id(ids, share.albumName);
+            shareIds[k++] = id(ids, share.sharedBy);
+            shareIds[k++] = id(ids, share.createdAt);
+            shareIds[k++] = id(ids, share.expiresAt);
+            shareIds[k++] = id(ids, share.permission);
+            shareIds[k++] = id(ids, share.password);
+        }
+
+        SortedMap<String, SearchIndex.Postings> postings = SearchIndex.build(images).terms();
+        int[] termKeys = new int[postings.size()];
+        int[] termStarts = new int[postings.size() + 1];
+        int postingCount = 0;
+        k = 0;
+        for (Map.Entry<String, SearchIndex.Postings> e : postings.entrySet()) {
+            termKeys[k] = id(ids, e.getKey());
+            termStarts[k++] = postingCount;
+            postingCount += e.getValue().size;
+        }
+        termStarts[k] = postingCount;
+
+        ByteArrayOutputStream strings = new ByteArrayOutputStream();
+        int[] offsets = new int[ids.size() + 1];
+        int i = 0;
+        for (String s : ids.keySet()) {
+            offsets[i++] = strings.size();
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            strings.write(bytes, 0, bytes.length);
+        }
+        offsets[i] = strings.size();
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(ids.size());
+            out.writeInt(images.size());
+            out.writeInt(albums.size());
+            out.writeInt(shares.size());
+            out.writeInt(termKeys.length);
+            out.writeInt(postingCount);
+            for (int offset : offsets) out.writeInt(offset);
+            for (int id : imageRecords) out.writeInt(id);
+            for (int id : albumIds) out.writeInt(id);
+            for (int id : shareIds) out.writeInt(id);
+            for (int id : termKeys) out.writeInt(id);
+            for (int start : termStarts) out.writeInt(start);
+            for (SearchIndex.Postings p : postings.values()) {
+                for (int j = 0; j < p.size; j++) out.writeInt(p.docs[j]);
+            }
+            for (SearchIndex.Postings p : postings.values()) {
+                for (int j = 0; j < p.size; j++) out.writeInt(p.weights[j]);
+            }
+            strings.writeTo(out);
+        }
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        for (Path old : existing) {
+            try {
+                Files.deleteIfExists(old);
+            } catch (IOException e) {
+                // Still mapped somewhere; the next compaction will try again
+            }
+        }
+        return target;
+    }
+
+    private static int id(Map<String, Integer> ids, String s) {
+        if (s == null) s = "";
+        Integer id = ids.get(s);
+        if (id == null) {
+            id = ids.size();
+            ids.put(s, id);
+        }
+        return id;
+    }
+
+    private static long generationOf(Path path) {
+        String name = path.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring("metadata-".length(), name.length() - ".bin".length()));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
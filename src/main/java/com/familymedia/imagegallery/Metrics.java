@@ -0,0 +1,294 @@
+package com.familymedia.imagegallery;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+// Counters and latency histograms for the places the gallery spends its time in: decoding,
+// scaling, metadata I/O, laying out the grid, share lookups. Recording is a few atomic
+// adds, so it is always on and safe from any thread.
+//
+// Every metric is also an MBean, com.familymedia.imagegallery:type=Timer|Counter,name=<name>
+// (jconsole, VisualVM), and -Dgallery.metrics.logSeconds=<n> logs all of them every n
+// seconds through java.util.logging.
+class Metrics {
+    static final String LOG_PROPERTY = "gallery.metrics.logSeconds";
+    private static final String DOMAIN = "com.familymedia.imagegallery";
+    private static final Logger LOG = Logger.getLogger(Metrics.class.getName());
+
+    private static final Map<String, Timer> timers = new TreeMap<>();
+    private static final Map<String, Counter> counters = new TreeMap<>();
+
+    static {
+        long seconds = Long.getLong(LOG_PROPERTY, 0);
+        if (seconds > 0) {
+            ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-log");
+                t.setDaemon(true);
+                return t;
+            });
+            logger.scheduleAtFixedRate(() -> LOG.info(summary()), seconds, seconds, TimeUnit.SECONDS);
+        }
+    }
+
+    static synchronized Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = new Timer(name);
+            timers.put(name, timer);
+            register("Timer", name, timer.bean());
+        }
+        return timer;
+    }
+
+    static synchronized Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            counter = new Counter(name);
+            counters.put(name, counter);
+            register("Counter", name, counter.bean());
+        }
+        return counter;
+    }
+
+    // Sorted by name
+    static synchronized List<Timer> timers() {
+        return new ArrayList<>(timers.values());
+    }
+
+    static synchronized List<Counter> counters() {
+        return new ArrayList<>(counters.values());
+    }
+
+    static synchronized void resetAll() {
+        for (Timer timer : timers.values()) timer.reset();
+        for (Counter counter : counters.values()) counter.reset();
+    }
+
+    static String summary() {
+        StringBuilder sb = new StringBuilder("Gallery metrics");
+        for (Timer t : timers()) {
+            sb.append(String.format("%n  %-22s %8d calls   p50 %9.2f ms   p99 %9.2f ms   max %9.2f ms",
+                    t.name, t.count(), millis(t.percentile(0.50)), millis(t.percentile(0.99)), millis(t.max())));
+        }
+        for (Counter c : counters()) {
+            sb.append(String.format("%n  %-22s %8d", c.name, c.get()));
+        }
+        return sb.toString();
+    }
+
+    static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static void register(String type, String name, DynamicMBean bean) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    bean, new ObjectName(DOMAIN + ":type=" + type + ",name=" + name));
+        } catch (JMException e) {
+            // Only the JMX view is missing, the metric itself still records
+            e.printStackTrace();
+        }
+    }
+
+    // Latencies in a histogram with 8 buckets per power of two (HdrHistogram-style), so the
+    // percentiles it reports are at most 12.5% above the true value
+    static final class Timer {
+        private static final int SUB_BUCKET_BITS = 3;
+        private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        private Timer(String name) {
+            this.name = name;
+        }
+
+        long start() {
+            return System.nanoTime();
+        }
+
+        void stop(long start) {
+            record(System.nanoTime() - start);
+        }
+
+        void record(long nanos) {
+            nanos = Math.max(0, nanos);
+            buckets.incrementAndGet(bucket(nanos));
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long max;
+            while (nanos > (max = maxNanos.get()) && !maxNanos.compareAndSet(max, nanos)) {
+                // Another thread raised it meanwhile; compare again
+            }
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        long max() {
+            return maxNanos.get();
+        }
+
+        long mean() {
+            long n = count.get();
+            return n == 0 ? 0 : totalNanos.get() / n;
+        }
+
+        // In nanoseconds; 0 while nothing has been recorded
+        long percentile(double p) {
+            long[] snapshot = new long[BUCKETS];
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                n += snapshot[i];
+            }
+            if (n == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(p * n));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(upperBound(i), max());
+                }
+            }
+            return max();
+        }
+
+        void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.set(0);
+            totalNanos.set(0);
+            maxNanos.set(0);
+        }
+
+        static int bucket(long nanos) {
+            if (nanos < SUB_BUCKETS) return (int) nanos;
+            int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+            return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+        }
+
+        static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) return bucket;
+            int shift = bucket / SUB_BUCKETS - 1;
+            long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+            return lower + (1L << shift) - 1;
+        }
+
+        private DynamicMBean bean() {
+            Bean bean = new Bean("Latency of " + name + " in milliseconds", this::reset);
+            bean.attribute("Count", "long", this::count);
+            bean.attribute("MeanMillis", "double", () -> millis(mean()));
+            bean.attribute("P50Millis", "double", () -> millis(percentile(0.50)));
+            bean.attribute("P99Millis", "double", () -> millis(percentile(0.99)));
+            bean.attribute("MaxMillis", "double", () -> millis(max()));
+            return bean;
+        }
+    }
+
+    static final class Counter {
+        final String name;
+        private final AtomicLong value = new AtomicLong();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        void increment() {
+            value.incrementAndGet();
+        }
+
+        long get() {
+            return value.get();
+        }
+
+        void reset() {
+            value.set(0);
+        }
+
+        private DynamicMBean bean() {
+            Bean bean = new Bean("Count of " + name, this::reset);
+            bean.attribute("Count", "long", this::get);
+            return bean;
+        }
+    }
+
+    // Read-only attributes plus a reset() operation. Dynamic, so the metric classes need
+    // not be public as standard MBeans would require.
+    private static final class Bean implements DynamicMBean {
+        private final String description;
+        private final Runnable reset;
+        private final Map<String, Supplier<Object>> values = new LinkedHashMap<>();
+        private final List<MBeanAttributeInfo> attributes = new ArrayList<>();
+
+        Bean(String description, Runnable reset) {
+            this.description = description;
+            this.reset = reset;
+        }
+
+        void attribute(String name, String type, Supplier<Object> value) {
+            values.put(name, value);
+            attributes.add(new MBeanAttributeInfo(name, type, name, true, false, false));
+        }
+
+        @Override
+        public Object getAttribute(String name) throws AttributeNotFoundException {
+            Supplier<Object> value = values.get(name);
+            if (value == null) throw new AttributeNotFoundException(name);
+            return value.get();
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] names) {
+            AttributeList list = new AttributeList();
+            for (String name : names) {
+                Supplier<Object> value = values.get(name);
+                if (value != null) list.add(new Attribute(name, value.get()));
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String action, Object[] params, String[] signature) throws ReflectionException {
+            if (action.equals("reset") && (params == null || params.length == 0)) {
+                reset.run();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(action));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            MBeanOperationInfo resetInfo = new MBeanOperationInfo(
+                    "reset", "Clears the recorded values", new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION);
+            return new MBeanInfo(Metrics.class.getName(), description,
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[] {resetInfo}, null);
+        }
+    }
+}
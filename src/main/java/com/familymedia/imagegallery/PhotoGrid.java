@@ -0,0 +1,206 @@
+package com.familymedia.imagegallery;
+
+import javax.swing.*;
+import javax.swing.event.ChangeListener;
+import java.awt.*;
+import java.util.*;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+
+// Three-column photo grid that only creates cards for the rows inside the scroll pane's
+// viewport (plus one row of overscan on either side). Cards that scroll out of range are
+// removed and handed to releaseCard, so the cost of a scroll does not depend on how many
+// photos the album holds.
+//
+// The grid can also be filled a page at a time: once the viewport comes within
+// PREFETCH_ROWS of the last row, the near-end listener is told to fetch more.
+class PhotoGrid extends JPanel implements Scrollable {
+    private static final int COLUMNS = 3;
+    private static final int GAP = 15;
+    private static final int PADDING = 20;
+    private static final int MIN_CARD_WIDTH = 320;
+    private static final int OVERSCAN_ROWS = 1;
+    private static final int PREFETCH_ROWS = 10;
+    private static final Metrics.Timer LAYOUT_TIMER = Metrics.timer("grid.layout");
+
+    private final Function<ImageInfo, JComponent> createCard;
+    private final Consumer<JComponent> releaseCard;
+    private final Map<Integer, JComponent> realized = new HashMap<>();
+    private final ChangeListener viewportListener = e -> updateCards();
+    private Runnable nearEnd = () -> {};
+    private List<ImageInfo> images = Collections.emptyList();
+    private int rowHeight = 410; // Grows if a card turns out taller
+
+    PhotoGrid(Function<ImageInfo, JComponent> createCard, Consumer<JComponent> releaseCard) {
+        super(null);
+        this.createCard = createCard;
+        this.releaseCard = releaseCard;
+        setBackground(new Color(245, 245, 245));
+    }
+
+    void setImages(List<ImageInfo> images) {
+        clearCards();
+        this.images = new ArrayList<>(images);
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).setViewPosition(new Point(0, 0));
+        }
+        revalidate();
+        updateCards();
+        repaint();
+    }
+
+    // Adds photos after the current ones without moving the scroll position
+    void addImages(List<ImageInfo> more) {
+        images.addAll(more);
+        revalidate();
+        updateCards();
+        repaint();
+    }
+
+    int getImageCount() {
+        return images.size();
+    }
+
+    ImageInfo getLastImage() {
+        return images.isEmpty() ? null : images.get(images.size() - 1);
+    }
+
+    // Called on the event dispatch thread, possibly in the middle of a layout; it should
+    // only start the fetch and add the photos when they arrive
+    void setNearEndListener(Runnable nearEnd) {
+        this.nearEnd = nearEnd;
+    }
+
+    @Override
+    public void addNotify() {
+        super.addNotify();
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).addChangeListener(viewportListener);
+        }
+    }
+
+    @Override
+    public void removeNotify() {
+        if (getParent() instanceof JViewport) {
+            ((JViewport) getParent()).removeChangeListener(viewportListener);
+        }
+        clearCards();
+        super.removeNotify();
+    }
+
+    @Override
+    public void doLayout() {
+        updateCards();
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        int rows = (images.size() + COLUMNS - 1) / COLUMNS;
+        int width = PADDING * 2 + COLUMNS * MIN_CARD_WIDTH + (COLUMNS - 1) * GAP;
+        int height = PADDING * 2 + rows * rowHeight + Math.max(0, rows - 1) * GAP;
+        return new Dimension(width, height);
+    }
+
+    private void updateCards() {
+        long start = LAYOUT_TIMER.start();
+        placeCards();
+        LAYOUT_TIMER.stop(start);
+    }
+
+    private void placeCards() {
+        Rectangle visible = getVisibleRect();
+        if (images.isEmpty() || visible.isEmpty()) {
+            clearCards();
+            return;
+        }
+
+        int pitch = rowHeight + GAP;
+        int rows = (images.size() + COLUMNS - 1) / COLUMNS;
+        int firstRow = Math.max(0, (visible.y - PADDING) / pitch - OVERSCAN_ROWS);
+        int lastRow = Math.min(rows - 1, (visible.y + visible.height - PADDING) / pitch + OVERSCAN_ROWS);
+        int first = firstRow * COLUMNS;
+        int last = Math.min(images.size() - 1, (lastRow + 1) * COLUMNS - 1);
+
+        // Release cards that left the window
+        Iterator<Map.Entry<Integer, JComponent>> it = realized.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Integer, JComponent> entry = it.next();
+            if (entry.getKey() < first || entry.getKey() > last) {
+                remove(entry.getValue());
+                releaseCard.accept(entry.getValue());
+                it.remove();
+            }
+        }
+
+        // Create the ones that entered it
+        boolean grew = false;
+        for (int i = first; i <= last; i++) {
+            if (!realized.containsKey(i)) {
+                JComponent card = createCard.apply(images.get(i));
+                add(card);
+                realized.put(i, card);
+                int height = card.getPreferredSize().height;
+                if (height > rowHeight) {
+                    rowHeight = height;
+                    grew = true;
+                }
+            }
+        }
+        if (grew) {
+            revalidate();
+            placeCards();
+            return;
+        }
+
+        int cardWidth = Math.max(1, (getWidth() - 2 * PADDING - (COLUMNS - 1) * GAP) / COLUMNS);
+        for (Map.Entry<Integer, JComponent> entry : realized.entrySet()) {
+            int row = entry.getKey() / COLUMNS;
+            int col = entry.getKey() % COLUMNS;
+            JComponent card = entry.getValue();
+            card.setBounds(PADDING + col * (cardWidth + GAP), PADDING + row * pitch, cardWidth, rowHeight);
+            card.validate();
+        }
+        repaint();
+
+        if (lastRow >= rows - 1 - PREFETCH_ROWS) {
+            nearEnd.run();
+        }
+    }
+
+    private void clearCards() {
+        for (JComponent card : realized.values()) {
+            remove(card);
+            releaseCard.accept(card);
+        }
+        realized.clear();
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        // Stretch to fill the viewport when there are only a few rows
+        return getParent() instanceof JViewport && getParent().getHeight() > getPreferredSize().height;
+    }
+}
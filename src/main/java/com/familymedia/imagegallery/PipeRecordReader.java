@@ -0,0 +1,241 @@
+package com.familymedia.imagegallery;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+// Streaming parser for pipe-delimited records, one per line: the metadata journal and the
+// old data.txt, albums.txt and shares.txt. The bytes are scanned in 64 KB chunks and a
+// field that lies within one chunk is decoded straight from the buffer, so a record costs
+// its field Strings and one array (no Reader, no line String, no regex). The delimiter,
+// backslash and line breaks are ASCII, which never occurs inside a multi-byte character in
+// UTF-8 or the usual platform charsets, so fields can be found before decoding.
+//
+// In escaped mode (the journal) a backslash escapes the delimiter, itself and line breaks
+// (\| \\ \n \r), so any text round-trips through escape(). Any other backslash is kept as
+// it is. The old text files were written without escaping and are read without it.
+class PipeRecordReader implements Closeable {
+    static final char DELIMITER = '|';
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final Logger LOG = Logger.getLogger(PipeRecordReader.class.getName());
+
+    private final InputStream in;
+    private final Charset charset;
+    private final String source;
+    private final boolean escaped;
+    private final byte[] buffer = new byte[BUFFER_BYTES];
+    private int pos = 0;
+    private int limit = 0;
+    private long consumed = 0; // Bytes in the chunks before the current one
+    private boolean afterCr = false;
+    private int linesRead = 0;
+    private int line = 0;
+    private boolean complete = false;
+    private long completeBytes = 0;
+    // Only used for a field that spans two chunks or contains an escape
+    private byte[] field = new byte[256];
+    private int fieldLength = 0;
+    private final List<String> fields = new ArrayList<>();
+
+    // source names the input in warnings, e.g. the file name
+    PipeRecordReader(InputStream in, Charset charset, String source, boolean escaped) {
+        this.in = in;
+        this.charset = charset;
+        this.source = source;
+        this.escaped = escaped;
+    }
+
+    // The fields of the next record, or null at the end of the input. Blank lines are
+    // skipped. Line breaks may be \n, \r\n or \r.
+    String[] next() throws IOException {
+        String[] record;
+        do {
+            record = readLine();
+        } while (record != null && record.length == 1 && record[0].isEmpty());
+        return record;
+    }
+
+    // Line number of the record next() returned last
+    int line() {
+        return line;
+    }
+
+    // For input that starts part way into a file, so warnings give the file's line numbers
+    void setFirstLine(int firstLine) {
+        linesRead = firstLine - 1;
+    }
+
+    // Whether the record next() returned last ended with a line break. The last line of a
+    // file that is being appended to may not be written completely yet.
+    boolean complete() {
+        return complete;
+    }
+
+    // Bytes read up to the end of the last line that had a line break, where reading the
+    // rest of a growing file can pick up later
+    long completeBytes() {
+        return completeBytes;
+    }
+
+    // Logs that the current record is skipped, with its line number
+    void skip(String reason) {
+        LOG.warning(source + " line " + line + ": " + reason + "; record skipped");
+    }
+
+    void warn(String message) {
+        LOG.warning(source + " line " + line + ": " + message);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private String[] readLine() throws IOException {
+        if (pos == limit && !fill()) return null;
+        if (afterCr) {
+            afterCr = false;
+            if (buffer[pos] == '\n') {
+                pos++;
+                if (pos == limit && !fill()) return null;
+            }
+        }
+        line = ++linesRead;
+        fields.clear();
+        fieldLength = 0;
+
+        while (true) {
+            int start = pos;
+            while (pos < limit && !isSpecial(buffer[pos])) {
+                pos++;
+            }
+            if (pos == limit) {
+                // The field goes on in the next chunk (or ends with the input)
+                collect(start, pos);
+                if (!fill()) {
+                    fields.add(take(0, 0));
+                    complete = false;
+                    return toArray();
+                }
+                continue;
+            }
+
+            byte b = buffer[pos++];
+            if (b == DELIMITER) {
+                fields.add(take(start, pos - 1));
+            } else if (b == '\\') {
+                collect(start, pos - 1);
+                unescape();
+            } else {
+                fields.add(take(start, pos - 1));
+                afterCr = b == '\r';
+                complete = true;
+                completeBytes = consumed + pos;
+                return toArray();
+            }
+        }
+    }
+
+    // Called after a backslash; the byte after it is not read yet
+    private void unescape() throws IOException {
+        if (pos == limit && !fill()) {
+            collect((byte) '\\');
+            return;
+        }
+        switch (buffer[pos]) {
+            case '\\':
+                collect((byte) '\\');
+                pos++;
+                break;
+            case DELIMITER:
+                collect((byte) DELIMITER);
+                pos++;
+                break;
+            case 'n':
+                collect((byte) '\n');
+                pos++;
+                break;
+            case 'r':
+                collect((byte) '\r');
+                pos++;
+                break;
+            default:
+                collect((byte) '\\'); // Not an escape; the next byte is read as usual
+        }
+    }
+
+    private boolean isSpecial(byte b) {
+        return b == DELIMITER || b == '\n' || b == '\r' || (b == '\\' && escaped);
+    }
+
+    // The field made of what is collected so far plus buffer[start, end)
+    private String take(int start, int end) {
+        if (fieldLength == 0) {
+            return new String(buffer, start, end - start, charset);
+        }
+        collect(start, end);
+        String value = new String(field, 0, fieldLength, charset);
+        fieldLength = 0;
+        return value;
+    }
+
+    private void collect(int start, int end) {
+        int n = end - start;
+        if (fieldLength + n > field.length) {
+            field = Arrays.copyOf(field, Math.max(field.length * 2, fieldLength + n));
+        }
+        System.arraycopy(buffer, start, field, fieldLength, n);
+        fieldLength += n;
+    }
+
+    private void collect(byte b) {
+        if (fieldLength == field.length) {
+            field = Arrays.copyOf(field, field.length * 2);
+        }
+        field[fieldLength++] = b;
+    }
+
+    private String[] toArray() {
+        return fields.toArray(new String[0]);
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        int n = in.read(buffer, 0, buffer.length);
+        pos = 0;
+        limit = Math.max(0, n);
+        return n > 0;
+    }
+
+    // The field as the escaped mode reads it back; null is written as an empty field
+    static String escape(String value) {
+        if (value == null) return "";
+        int i = 0;
+        while (i < value.length() && !needsEscape(value.charAt(i))) {
+            i++;
+        }
+        if (i == value.length()) return value;
+
+        StringBuilder sb = new StringBuilder(value.length() + 8).append(value, 0, i);
+        for (; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '\\': sb.append("\\\\"); break;
+                case DELIMITER: sb.append("\\|"); break;
+                case '\n': sb.append("\\n"); break;
+                case '\r': sb.append("\\r"); break;
+                default: sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static boolean needsEscape(char c) {
+        return c == '\\' || c == DELIMITER || c == '\n' || c == '\r';
+    }
+}
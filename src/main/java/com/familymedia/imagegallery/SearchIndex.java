@@ -0,0 +1,237 @@
+package com.familymedia.imagegallery;
+
+import java.util.*;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+
+// Inverted index over image descriptions and tags. Text is split into lowercase
+// letter/digit tokens; each term maps to a posting list of (document, weight), where a
+// tag occurrence weighs more than a word in the description.
+//
+// Terms are keyed as owner + '\0' + token in one sorted map, so a prefix query for one
+// user is a single subMap() range and never sees other users' photos. Every query token
+// must match (AND); results are ranked by summed weight, exact token matches counting
+// double, and otherwise keep upload order.
+//
+// Removing an image only drops its document slot; dead entries are skipped at query time
+// and disappear the next time the index is rebuilt from a snapshot. Images are told apart
+// by file name, so adding one again replaces it.
+//
+// Updated on the event dispatch thread and queried from background search workers, so
+// every public operation holds the index lock (queries take well under a millisecond).
+class SearchIndex {
+    static final int TAG_WEIGHT = 3;
+    static final int DESCRIPTION_WEIGHT = 1;
+
+    private final List<ImageInfo> docs = new ArrayList<>();
+    private final Map<String, Integer> docIds = new HashMap<>();
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    // Same postings by exact term; adding a document mostly hits existing terms
+    private final Map<String, Postings> termLookup = new HashMap<>();
+
+    // Growable (doc, weight) list for one term, doc ids ascending
+    static class Postings {
+        int[] docs;
+        int[] weights;
+        int size;
+
+        Postings() {
+            this(new int[4], new int[4], 0);
+        }
+
+        Postings(int[] docs, int[] weights, int size) {
+            this.docs = docs;
+            this.weights = weights;
+            this.size = size;
+        }
+
+        void add(int doc, int weight) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                weights = Arrays.copyOf(weights, size * 2);
+            }
+            docs[size] = doc;
+            weights[size] = weight;
+            size++;
+        }
+    }
+
+    static SearchIndex build(List<ImageInfo> images) {
+        SearchIndex index = new SearchIndex();
+        index.rebuild(images);
+        return index;
+    }
+
+    synchronized void rebuild(List<ImageInfo> images) {
+        docs.clear();
+        docIds.clear();
+        terms.clear();
+        termLookup.clear();
+        for (ImageInfo img : images) {
+            add(img);
+        }
+    }
+
+    // Takes over postings read from a snapshot; doc ids are positions in images
+    synchronized void restore(List<ImageInfo> images, SortedMap<String, Postings> postings) {
+        docs.clear();
+        docIds.clear();
+        terms.clear();
+        termLookup.clear();
+        docs.addAll(images);
+        for (int i = 0; i < images.size(); i++) {
+            docIds.put(images.get(i).fileName, i);
+        }
+        terms.putAll(postings);
+        termLookup.putAll(postings);
+    }
+
+    // Sorted term -> postings, for writing a snapshot. Only meaningful on a freshly built
+    // index, where doc ids are still the positions in the list it was built from.
+    synchronized SortedMap<String, Postings> terms() {
+        return Collections.unmodifiableSortedMap(terms);
+    }
+
+    synchronized void add(ImageInfo img) {
+        int doc = docs.size();
+        docs.add(img);
+        Integer replaced = docIds.put(img.fileName, doc);
+        if (replaced != null) {
+            docs.set(replaced, null);
+        }
+
+        Map<String, Integer> weights = new HashMap<>();
+        tokenize(img.tags, token -> weights.merge(token, TAG_WEIGHT, Integer::sum));
+        tokenize(img.description, token -> weights.merge(token, DESCRIPTION_WEIGHT, Integer::sum));
+        String prefix = img.uploader + '\0';
+        for (Map.Entry<String, Integer> e : weights.entrySet()) {
+            String term = prefix + e.getKey();
+            Postings postings = termLookup.get(term);
+            if (postings == null) {
+                postings = new Postings();
+                termLookup.put(term, postings);
+                terms.put(term, postings);
+            }
+            postings.add(doc, e.getValue());
+        }
+    }
+
+    synchronized void remove(ImageInfo img) {
+        Integer doc = docIds.remove(img.fileName);
+        if (doc != null) {
+            docs.set(doc, null);
+        }
+    }
+
+    // Photos of owner matching every word of query, best match first. Each word matches
+    // any indexed token it is a prefix of.
+    synchronized List<ImageInfo> search(String owner, String query) {
+        List<String> tokens = new ArrayList<>();
+        tokenize(query, tokens::add);
+        List<ImageInfo> results = new ArrayList<>();
+        if (tokens.isEmpty()) return results;
+
+        // Narrowest word first, so the running intersection stays small
+        List<SortedMap<String, Postings>> ranges = new ArrayList<>();
+        for (String token : tokens) {
+            String from = owner + '\0' + token;
+            ranges.add(terms.subMap(from, from + Character.MAX_VALUE));
+        }
+        Integer[] order = new Integer[tokens.size()];
+        long[] sizes = new long[tokens.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            for (Postings p : ranges.get(i).values()) sizes[i] += p.size;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> sizes[i]));
+
+        long[] matches = null;
+        for (int i : order) {
+            long[] word = match(ranges.get(i), owner + '\0' + tokens.get(i));
+            matches = matches == null ? word : intersect(matches, word);
+            if (matches.length == 0) return results;
+        }
+
+        // Highest score first, then upload order
+        long[] ranked = new long[matches.length];
+        for (int i = 0; i < matches.length; i++) {
+            ranked[i] = ((long) (Integer.MAX_VALUE - (int) matches[i]) << 32) | (matches[i] >>> 32);
+        }
+        Arrays.sort(ranked);
+        for (long r : ranked) {
+            results.add(docs.get((int) r));
+        }
+        return results;
+    }
+
+    // Live documents of one query word as (doc << 32 | score), sorted by doc
+    private long[] match(SortedMap<String, Postings> range, String exact) {
+        int total = 0;
+        for (Postings p : range.values()) total += p.size;
+        long[] packed = new long[total];
+        int n = 0;
+        for (Map.Entry<String, Postings> e : range.entrySet()) {
+            int boost = e.getKey().equals(exact) ? 2 : 1;
+            Postings p = e.getValue();
+            for (int j = 0; j < p.size; j++) {
+                int doc = p.docs[j];
+                if (docs.get(doc) != null) {
+                    packed[n++] = ((long) doc << 32) | (p.weights[j] * boost);
+                }
+            }
+        }
+        // Several terms share the prefix: bring each document's entries together
+        if (range.size() > 1) {
+            Arrays.sort(packed, 0, n);
+        }
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m > 0 && (packed[m - 1] >>> 32) == (packed[i] >>> 32)) {
+                packed[m - 1] += packed[i] & 0xFFFFFFFFL;
+            } else {
+                packed[m++] = packed[i];
+            }
+        }
+        return Arrays.copyOf(packed, m);
+    }
+
+    // Documents present in both, with their scores added
+    private static long[] intersect(long[] a, long[] b) {
+        long[] out = new long[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < a.length && j < b.length) {
+            long docA = a[i] >>> 32;
+            long docB = b[j] >>> 32;
+            if (docA < docB) {
+                i++;
+            } else if (docA > docB) {
+                j++;
+            } else {
+                out[n++] = a[i++] + (b[j++] & 0xFFFFFFFFL);
+            }
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    // Lowercase runs of letters and digits
+    static void tokenize(String text, Consumer<String> sink) {
+        if (text == null) return;
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                sink.accept(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            sink.accept(token.toString());
+        }
+    }
+}
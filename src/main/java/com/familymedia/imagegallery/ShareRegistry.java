@@ -0,0 +1,150 @@
+package com.familymedia.imagegallery;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.List;
+
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+// All share links, indexed by token and by owner. The expiry of each share is parsed once,
+// when it is added, so checking a token is a hash lookup and a comparison. Shares that
+// can expire also sit in a queue ordered by expiry; sweep() pops the ones whose time has
+// come, so it only ever looks at shares it removes.
+//
+// Like the other gallery lists, only used from the event dispatch thread.
+class ShareRegistry {
+    static final DateTimeFormatter EXPIRY_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+    static final String NEVER = "Never";
+
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+    // expiresAt that could not be parsed: treated as expired, but never swept
+    private static final long UNKNOWN_EXPIRY = Long.MIN_VALUE;
+
+    private static class Entry {
+        final ShareInfo share;
+        final long expiry;
+
+        Entry(ShareInfo share, long expiry) {
+            this.share = share;
+            this.expiry = expiry;
+        }
+    }
+
+    private final Map<String, Entry> byToken = new LinkedHashMap<>();
+    private final Map<String, Map<String, ShareInfo>> byOwner = new HashMap<>();
+    // May hold entries already removed or replaced; sweep() skips those
+    private final PriorityQueue<Entry> expiries = new PriorityQueue<>(Comparator.comparingLong((Entry e) -> e.expiry));
+
+    void rebuild(List<ShareInfo> shares) {
+        byToken.clear();
+        byOwner.clear();
+        expiries.clear();
+        for (ShareInfo share : shares) {
+            add(share);
+        }
+    }
+
+    void add(ShareInfo share) {
+        remove(share.token);
+        Entry entry = new Entry(share, parseExpiry(share.expiresAt));
+        byToken.put(share.token, entry);
+        byOwner.computeIfAbsent(share.sharedBy, k -> new LinkedHashMap<>()).put(share.token, share);
+        if (entry.expiry != NO_EXPIRY && entry.expiry != UNKNOWN_EXPIRY) {
+            expiries.add(entry);
+        }
+    }
+
+    ShareInfo remove(String token) {
+        Entry entry = byToken.remove(token);
+        if (entry == null) return null;
+        Map<String, ShareInfo> owned = byOwner.get(entry.share.sharedBy);
+        if (owned != null) {
+            owned.remove(token);
+            if (owned.isEmpty()) byOwner.remove(entry.share.sharedBy);
+        }
+        return entry.share;
+    }
+
+    ShareInfo get(String token) {
+        Entry entry = byToken.get(token);
+        return entry == null ? null : entry.share;
+    }
+
+    boolean isExpired(String token, long now) {
+        Entry entry = byToken.get(token);
+        return entry == null || entry.expiry == UNKNOWN_EXPIRY || now >= entry.expiry;
+    }
+
+    boolean hasUnknownExpiry(String token) {
+        Entry entry = byToken.get(token);
+        return entry != null && entry.expiry == UNKNOWN_EXPIRY;
+    }
+
+    // The owner's shares in the order they were created
+    List<ShareInfo> byOwner(String owner) {
+        Map<String, ShareInfo> owned = byOwner.get(owner);
+        return owned == null ? new ArrayList<>() : new ArrayList<>(owned.values());
+    }
+
+    List<ShareInfo> all() {
+        List<ShareInfo> shares = new ArrayList<>(byToken.size());
+        for (Entry entry : byToken.values()) {
+            shares.add(entry.share);
+        }
+        return shares;
+    }
+
+    int size() {
+        return byToken.size();
+    }
+
+    // Removes every share that has expired by now and returns them, for the caller to
+    // record the removal
+    List<ShareInfo> sweep(long now) {
+        List<ShareInfo> expired = new ArrayList<>();
+        while (!expiries.isEmpty() && expiries.peek().expiry <= now) {
+            Entry entry = expiries.poll();
+            if (byToken.get(entry.share.token) == entry) {
+                remove(entry.share.token);
+                expired.add(entry.share);
+            }
+        }
+        return expired;
+    }
+
+    // Milliseconds since the epoch, as the local time the share was created in
+    static long parseExpiry(String expiresAt) {
+        if (expiresAt == null || expiresAt.equals(NEVER)) return NO_EXPIRY;
+        try {
+            return toMillis(parseFixed(expiresAt));
+        } catch (RuntimeException e) {
+            return UNKNOWN_EXPIRY;
+        }
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // calculateExpiry always writes exactly yyyy-MM-dd HH:mm; reading the digits directly is
+    // many times faster than the formatter, which matters when loading thousands of shares
+    private static LocalDateTime parseFixed(String s) {
+        if (s.length() == 16 && s.charAt(4) == '-' && s.charAt(7) == '-' && s.charAt(10) == ' ' && s.charAt(13) == ':') {
+            return LocalDateTime.of(digits(s, 0, 4), digits(s, 5, 7), digits(s, 8, 10), digits(s, 11, 13), digits(s, 14, 16));
+        }
+        return LocalDateTime.parse(s, EXPIRY_FORMAT);
+    }
+
+    private static int digits(String s, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') throw new DateTimeParseException("Not a date", s, i);
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
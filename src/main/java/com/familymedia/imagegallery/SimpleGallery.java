@@ -8,24 +8,48 @@ import java.io.*;
 import java.nio.file.*;
 import java.util.*;
 import java.util.List;
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
+import java.util.concurrent.Future;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class SimpleGallery extends JFrame {
     private String currentUser;
-    private JPanel galleryPanel;
+    private JScrollPane galleryScroll;
+    private PhotoGrid photoGrid;
     private JLabel statusLabel;
     private JComboBox<String> albumSelector;
+    private JTextField searchField;
+    private javax.swing.Timer searchDebounce;
+    private SwingWorker<Integer, List<ImageInfo>> searchWorker;
+    private int searchGeneration = 0;
+    // The listing in the grid, fetched a page at a time (while not searching)
+    private int pageGeneration = 0;
+    private String pageOwner;
+    private String pageAlbum; // null for all of the owner's photos
+    private boolean pageLoading = false;
+    private boolean pagesExhausted = true;
     private List<ImageInfo> images = new ArrayList<>();
+    private SearchIndex searchIndex = new SearchIndex();
     private List<AlbumInfo> albums = new ArrayList<>();
-    private List<ShareInfo> shares = new ArrayList<>();
+    private ShareRegistry shareRegistry = new ShareRegistry();
     private String viewingSharedFrom = null; // Track if viewing shared album
+    private ImageCache imageCache = ImageCache.fromSystemProperties();
+    private ThumbnailStore thumbnailStore = new ThumbnailStore(THUMBS_DIR);
+    private ThumbnailLoader galleryThumbnails = new ThumbnailLoader(thumbnailStore, imageCache);
     private static final String IMAGES_DIR = "gallery_data/images";
-    private static final String DATA_FILE = "gallery_data/data.txt";
-    private static final String ALBUMS_FILE = "gallery_data/albums.txt";
-    private static final String SHARES_FILE = "gallery_data/shares.txt";
+    private static final String THUMBS_DIR = "gallery_data/thumbs";
+    private static final String BLOBS_DIR = "gallery_data/blobs";
+    private static final String IMPORT_CONFIG = "gallery_data/import_folders.properties";
+    private static final int SEARCH_DELAY_MS = 250;
+    private static final int SEARCH_CHUNK = 60;
+    private static final int PAGE_SIZE = 60;
+    private static final Metrics.Timer REFRESH_TIMER = Metrics.timer("gallery.refresh");
+    private static final Metrics.Timer SHARE_LOOKUP_TIMER = Metrics.timer("share.lookup");
+    private MetadataRepository store = MetadataRepository.open("gallery_data");
+    private BlobStore blobStore = new BlobStore(BLOBS_DIR, IMAGES_DIR);
+    private boolean compacting = false;
+    private ImportFolderWatcher importWatcher;
+    private SwingWorker<Void, Map.Entry<ImageInfo, ImageHeader>> headerBackfill;
     
     static class ImageInfo {
         String fileName;
@@ -34,14 +58,25 @@ public class SimpleGallery extends JFrame {
         String uploadDate;
         String album;
         String tags;
+        String blob; // Stored bytes in the BlobStore, null for photos still in images/
+        // From the file header (see ImageHeader); width is 0 until it has been read
+        int width;
+        int height;
+        int orientation;
+        String captureTime;
         
         ImageInfo(String fileName, String description, String uploader, String uploadDate, String album, String tags) {
+            this(fileName, description, uploader, uploadDate, album, tags, null);
+        }
+        
+        ImageInfo(String fileName, String description, String uploader, String uploadDate, String album, String tags, String blob) {
             this.fileName = fileName;
             this.description = description;
             this.uploader = uploader;
             this.uploadDate = uploadDate;
             this.album = album;
             this.tags = tags;
+            this.blob = blob;
         }
     }
     
@@ -79,12 +114,22 @@ public class SimpleGallery extends JFrame {
     }
     
     public SimpleGallery(String userName) {
+        EdtWatchdog.startFromSystemProperties(); // First, so a slow start is reported too
         this.currentUser = userName;
         initStorage();
-        loadAlbums();
-        loadImages();
-        loadShares();
+        loadMetadata();
         setupUI();
+        
+        // Check now and then whether the metadata journal should be compacted
+        javax.swing.Timer compactionTimer = new javax.swing.Timer(60_000, e -> compactMetadataIfNeeded());
+        compactionTimer.setInitialDelay(5_000);
+        compactionTimer.start();
+        
+        // Expired share links are dropped (and the removal saved) shortly after they expire
+        javax.swing.Timer shareSweeper = new javax.swing.Timer(60_000, e -> sweepExpiredShares());
+        shareSweeper.start();
+        
+        startImportWatcher(ImportFolderWatcher.configuredFolder(Paths.get(IMPORT_CONFIG), currentUser));
     }
     
     private void initStorage() {
@@ -121,6 +166,29 @@ public class SimpleGallery extends JFrame {
         JPanel rightTop = new JPanel(new FlowLayout(FlowLayout.RIGHT, 15, 0));
         rightTop.setOpaque(false);
         
+        // Search field in top bar - results replace the grid while it has text
+        JLabel searchLabelTop = new JLabel("Search:");
+        searchLabelTop.setFont(new Font("Arial", Font.BOLD, 13));
+        searchLabelTop.setForeground(Color.WHITE);
+        
+        searchField = new JTextField();
+        searchField.setFont(new Font("Arial", Font.PLAIN, 13));
+        searchField.setPreferredSize(new Dimension(220, 35));
+        searchField.setToolTipText("Description or tags - all words must match");
+        searchDebounce = new javax.swing.Timer(SEARCH_DELAY_MS, e -> refreshGallery());
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { searchDebounce.restart(); }
+        });
+        searchField.addActionListener(e -> {
+            searchDebounce.stop();
+            refreshGallery();
+        });
+        searchField.registerKeyboardAction(e -> searchField.setText(""),
+            KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), JComponent.WHEN_FOCUSED);
+        
         // Album selector in top bar
         JLabel albumLabelTop = new JLabel("Album:");
         albumLabelTop.setFont(new Font("Arial", Font.BOLD, 13));
@@ -143,6 +211,8 @@ public class SimpleGallery extends JFrame {
         userLabel.setForeground(Color.WHITE);
         userLabel.setBorder(BorderFactory.createEmptyBorder(0, 20, 0, 0));
         
+        rightTop.add(searchLabelTop);
+        rightTop.add(searchField);
         rightTop.add(albumLabelTop);
         rightTop.add(albumSelector);
         rightTop.add(userLabel);
@@ -169,6 +239,7 @@ public class SimpleGallery extends JFrame {
         
         sidebar.add(createSidebarButton("📤 Upload Photo", new Color(76, 175, 80), e -> uploadPhoto()));
         sidebar.add(createSidebarButton("🔍 Search Photos", new Color(121, 85, 72), e -> searchPhotos()));
+        sidebar.add(createSidebarButton("📥 Import Folder", new Color(96, 125, 139), e -> chooseImportFolder()));
         
         sidebar.add(Box.createRigidArea(new Dimension(0, 25)));
         
@@ -216,23 +287,22 @@ public class SimpleGallery extends JFrame {
         
         sidebar.add(Box.createVerticalGlue());
         
+        sidebar.add(createSidebarButton("📈 Diagnostics", new Color(120, 144, 156), e -> showDiagnostics()));
+        
         // Refresh button at bottom
         sidebar.add(createSidebarButton("🔄 Refresh", new Color(33, 150, 243), e -> {
-            loadAlbums();
-            loadImages();
-            loadShares();
+            loadMetadata();
             refreshGallery();
         }));
         sidebar.add(Box.createRigidArea(new Dimension(0, 20)));
         
-        // Gallery Panel
-        galleryPanel = new JPanel(new GridLayout(0, 3, 15, 15));
-        galleryPanel.setBackground(new Color(245, 245, 245));
-        galleryPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        // Gallery Panel - only the visible rows of cards are ever built
+        photoGrid = new PhotoGrid(info -> createPhotoCard(info, galleryThumbnails), this::releasePhotoCard);
+        photoGrid.setNearEndListener(this::loadNextPage);
         
-        JScrollPane scrollPane = new JScrollPane(galleryPanel);
-        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
-        scrollPane.setBorder(null);
+        galleryScroll = new JScrollPane(photoGrid);
+        galleryScroll.getVerticalScrollBar().setUnitIncrement(16);
+        galleryScroll.setBorder(null);
         
         // Status Bar
         JPanel statusPanel = new JPanel(new BorderLayout());
@@ -247,7 +317,7 @@ public class SimpleGallery extends JFrame {
         // Add all to frame
         add(topPanel, BorderLayout.NORTH);
         add(sidebar, BorderLayout.WEST);
-        add(scrollPane, BorderLayout.CENTER);
+        add(galleryScroll, BorderLayout.CENTER);
         add(statusPanel, BorderLayout.SOUTH);
         
         refreshGallery();
@@ -283,13 +353,23 @@ public class SimpleGallery extends JFrame {
     
     private void uploadPhoto() {
         JFileChooser chooser = new JFileChooser();
-        chooser.setFileFilter(new FileNameExtensionFilter("Images", "jpg", "jpeg", "png", "gif"));
+        chooser.setFileFilter(new FileNameExtensionFilter("Images", UploadPipeline.EXTENSIONS));
+        chooser.setMultiSelectionEnabled(true);
+        chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
         
         if (chooser.showOpenDialog(this) == JFileChooser.APPROVE_OPTION) {
-            File selectedFile = chooser.getSelectedFile();
+            List<File> selectedFiles = UploadPipeline.collectImages(chooser.getSelectedFiles());
+            if (selectedFiles.isEmpty()) {
+                JOptionPane.showMessageDialog(this, 
+                    "No JPG, PNG or GIF files found in the selection.", 
+                    "Upload Photo", 
+                    JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
             
-            // Create upload dialog
-            JDialog uploadDialog = new JDialog(this, "Upload Photo", true);
+            // Create upload dialog - description, tags and album apply to every selected photo
+            JDialog uploadDialog = new JDialog(this, 
+                selectedFiles.size() == 1 ? "Upload Photo" : "Upload " + selectedFiles.size() + " Photos", true);
             uploadDialog.setLayout(new BorderLayout(10, 10));
             uploadDialog.setSize(450, 350);
             uploadDialog.setLocationRelativeTo(this);
@@ -312,8 +392,9 @@ public class SimpleGallery extends JFrame {
                 }
             }
             
-            JLabel fileLabel = new JLabel("File:");
-            JLabel fileNameLabel = new JLabel(selectedFile.getName());
+            JLabel fileLabel = new JLabel(selectedFiles.size() == 1 ? "File:" : "Files:");
+            JLabel fileNameLabel = new JLabel(selectedFiles.size() == 1 ? 
+                selectedFiles.get(0).getName() : selectedFiles.size() + " photos");
             
             formPanel.add(descLabel);
             formPanel.add(descField);
@@ -337,26 +418,8 @@ public class SimpleGallery extends JFrame {
                 String tags = tagsField.getText().trim();
                 String album = albumCombo.getSelectedItem().toString();
                 
-                try {
-                    String newFileName = UUID.randomUUID().toString() + "_" + selectedFile.getName();
-                    Path destPath = Paths.get(IMAGES_DIR, newFileName);
-                    Files.copy(selectedFile.toPath(), destPath);
-                    
-                    String uploadDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-                    ImageInfo info = new ImageInfo(newFileName, description, currentUser, uploadDate, album, tags);
-                    images.add(info);
-                    saveImages();
-                    
-                    refreshGallery();
-                    statusLabel.setText("Photo uploaded successfully!");
-                    uploadDialog.dispose();
-                    
-                } catch (IOException ex) {
-                    JOptionPane.showMessageDialog(uploadDialog, 
-                        "Failed to upload photo: " + ex.getMessage(), 
-                        "Upload Error", 
-                        JOptionPane.ERROR_MESSAGE);
-                }
+                uploadDialog.dispose();
+                runUpload(selectedFiles, description, tags, album);
             });
             
             JButton cancelButton = new JButton("Cancel");
@@ -375,78 +438,381 @@ public class SimpleGallery extends JFrame {
         }
     }
     
+    // Imports the files on the upload pipeline behind a progress dialog, then adds them
+    // to the gallery in one batch: one journal write and one refresh
+    private void runUpload(List<File> files, String description, String tags, String album) {
+        UploadPipeline pipeline = new UploadPipeline(blobStore, thumbnailStore);
+        
+        JDialog progressDialog = new JDialog(this, "Uploading Photos", false);
+        progressDialog.setLayout(new BorderLayout(10, 10));
+        progressDialog.setSize(420, 160);
+        progressDialog.setLocationRelativeTo(this);
+        progressDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        
+        JPanel progressPanel = new JPanel(new BorderLayout(0, 10));
+        progressPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 0, 20));
+        JLabel progressLabel = new JLabel("Preparing " + files.size() + " photo(s)...");
+        JProgressBar progressBar = new JProgressBar(0, files.size());
+        progressBar.setStringPainted(true);
+        progressPanel.add(progressLabel, BorderLayout.NORTH);
+        progressPanel.add(progressBar, BorderLayout.CENTER);
+        
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
+        JButton cancelButton = new JButton("Cancel");
+        cancelButton.setBackground(new Color(158, 158, 158));
+        cancelButton.setForeground(Color.WHITE);
+        cancelButton.setFocusPainted(false);
+        cancelButton.setBorder(BorderFactory.createEmptyBorder(8, 20, 8, 20));
+        cancelButton.addActionListener(e -> {
+            pipeline.cancel();
+            cancelButton.setEnabled(false);
+            progressLabel.setText("Cancelling...");
+        });
+        buttonPanel.add(cancelButton);
+        
+        progressDialog.add(progressPanel, BorderLayout.CENTER);
+        progressDialog.add(buttonPanel, BorderLayout.SOUTH);
+        
+        SwingWorker<UploadPipeline.Result, String> worker = new SwingWorker<UploadPipeline.Result, String>() {
+            private volatile int done = 0;
+            
+            protected UploadPipeline.Result doInBackground() throws Exception {
+                return pipeline.run(files, currentUser, description, tags, album, (count, total, fileName) -> {
+                    done = count;
+                    publish(fileName);
+                });
+            }
+            
+            protected void process(List<String> fileNames) {
+                if (!cancelButton.isEnabled()) return;
+                progressBar.setValue(done);
+                progressLabel.setText(done + " of " + files.size() + ": " + fileNames.get(fileNames.size() - 1));
+            }
+            
+            protected void done() {
+                progressDialog.dispose();
+                UploadPipeline.Result result;
+                try {
+                    result = get();
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(SimpleGallery.this, 
+                        "Failed to upload photos: " + ex.getMessage(), 
+                        "Upload Error", 
+                        JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                if (result.cancelled) {
+                    statusLabel.setText("Upload cancelled");
+                    return;
+                }
+                
+                addImportedImages(result.imported);
+                
+                String summary = result.imported.size() + " photo(s) uploaded";
+                if (result.duplicates > 0) summary += ", " + result.duplicates + " duplicate(s) skipped";
+                statusLabel.setText(summary);
+                if (!result.failed.isEmpty()) {
+                    JOptionPane.showMessageDialog(SimpleGallery.this, 
+                        summary + ".\n" + result.failed.size() + " file(s) could not be uploaded:\n" + 
+                            String.join("\n", result.failed.subList(0, Math.min(10, result.failed.size()))) + 
+                            (result.failed.size() > 10 ? "\n..." : ""), 
+                        "Upload Error", 
+                        JOptionPane.ERROR_MESSAGE);
+                }
+            }
+        };
+        worker.execute();
+        progressDialog.setVisible(true);
+    }
+    
+    private void addImportedImages(List<ImageInfo> imported) {
+        images.addAll(imported);
+        for (ImageInfo info : imported) {
+            searchIndex.add(info);
+        }
+        store.imagesAdded(imported);
+        refreshGallery();
+    }
+    
+    // Lets the user pick (or stop watching) a folder whose new photos are imported
+    // automatically, e.g. where a phone backs up its camera roll
+    private void chooseImportFolder() {
+        String current = importWatcher != null 
+            ? "New photos in\n" + importWatcher.getFolder() + "\nare imported automatically." 
+            : "No import folder is set. New photos saved into a watched folder\nare added to your gallery automatically.";
+        Object[] options = importWatcher != null 
+            ? new Object[]{"Choose Folder...", "Stop Watching", "Cancel"} 
+            : new Object[]{"Choose Folder...", "Cancel"};
+        int choice = JOptionPane.showOptionDialog(this, current, "Import Folder", 
+            JOptionPane.DEFAULT_OPTION, JOptionPane.INFORMATION_MESSAGE, null, options, options[0]);
+        
+        Path folder;
+        if (choice == 0) {
+            JFileChooser chooser = new JFileChooser();
+            chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            chooser.setDialogTitle("Choose Import Folder");
+            if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+            folder = chooser.getSelectedFile().toPath();
+        } else if (choice == 1 && importWatcher != null) {
+            folder = null;
+        } else {
+            return;
+        }
+        
+        try {
+            ImportFolderWatcher.setConfiguredFolder(Paths.get(IMPORT_CONFIG), currentUser, folder);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, 
+                "Failed to save import folder: " + ex.getMessage(), 
+                "Import Folder", 
+                JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        startImportWatcher(folder);
+        statusLabel.setText(folder != null ? "Watching " + folder + " for new photos" : "Stopped watching the import folder");
+    }
+    
+    private void startImportWatcher(Path folder) {
+        if (importWatcher != null) {
+            importWatcher.stop();
+            importWatcher = null;
+        }
+        if (folder == null || !Files.isDirectory(folder)) return;
+        
+        importWatcher = new ImportFolderWatcher(folder, Paths.get("gallery_data", "imported_" + currentUser + ".txt"), 
+            currentUser, blobStore, thumbnailStore, result -> {
+                // Wait for the commit, so the watcher only marks the files done once they are saved
+                try {
+                    SwingUtilities.invokeAndWait(() -> commitWatchedImport(result, folder));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (java.lang.reflect.InvocationTargetException e) {
+                    e.getCause().printStackTrace();
+                }
+            });
+        importWatcher.start();
+    }
+    
+    // One batch from the import folder: photos the user already has (same bytes) are
+    // dropped, the rest added like an upload, with one refresh and one status message
+    private void commitWatchedImport(UploadPipeline.Result result, Path folder) {
+        Set<String> ownBlobs = store.blobs(currentUser);
+        List<ImageInfo> added = new ArrayList<>();
+        int duplicates = result.duplicates;
+        for (ImageInfo info : result.imported) {
+            if (ownBlobs.contains(info.blob)) {
+                duplicates++;
+                try {
+                    blobStore.release(info.blob);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            } else {
+                added.add(info);
+            }
+        }
+        if (added.isEmpty() && result.failed.isEmpty()) return;
+        
+        if (!added.isEmpty()) {
+            addImportedImages(added);
+        }
+        String summary = added.size() + " new photo(s) imported from " + folder.getFileName();
+        if (duplicates > 0) summary += ", " + duplicates + " already in your gallery";
+        if (!result.failed.isEmpty()) summary += ", " + result.failed.size() + " could not be read";
+        statusLabel.setText(summary);
+    }
+    
     private void refreshGallery() {
-        galleryPanel.removeAll();
+        long start = REFRESH_TIMER.start();
+        galleryThumbnails.cancelAll();
+        cancelSearch();
+        pageGeneration++;
+        pageLoading = false;
+        pagesExhausted = true;
         
         String selectedAlbum = albumSelector != null ? albumSelector.getSelectedItem().toString() : "All Images";
-        List<ImageInfo> filteredImages = new ArrayList<>();
         
         // Determine whose photos to show
         String photoOwner = viewingSharedFrom != null ? viewingSharedFrom : currentUser;
         
-        // Filter images by owner and album
-        for (ImageInfo img : images) {
-            if (img.uploader.equals(photoOwner)) {
-                if (selectedAlbum.equals("All Images") || selectedAlbum.equals(img.album)) {
-                    filteredImages.add(img);
-                }
-            }
+        String query = searchField != null ? searchField.getText().trim() : "";
+        if (!query.isEmpty()) {
+            startSearch(query, photoOwner, selectedAlbum);
+            return;
         }
         
-        if (filteredImages.isEmpty()) {
-            JPanel emptyPanel = new JPanel(new GridBagLayout());
-            emptyPanel.setBackground(new Color(245, 245, 245));
-            
-            JPanel messagePanel = new JPanel();
-            messagePanel.setLayout(new BoxLayout(messagePanel, BoxLayout.Y_AXIS));
-            messagePanel.setBackground(Color.WHITE);
-            messagePanel.setBorder(BorderFactory.createCompoundBorder(
-                BorderFactory.createLineBorder(new Color(220, 220, 220), 1),
-                BorderFactory.createEmptyBorder(40, 40, 40, 40)
-            ));
-            
-            JLabel iconLabel = new JLabel("📷");
-            iconLabel.setFont(new Font("Arial", Font.PLAIN, 60));
-            iconLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            
-            JLabel emptyLabel = new JLabel(viewingSharedFrom != null ? 
-                "No photos in this shared album" : "No photos yet");
-            emptyLabel.setFont(new Font("Arial", Font.BOLD, 18));
-            emptyLabel.setForeground(new Color(100, 100, 100));
-            emptyLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            
-            JLabel hintLabel = new JLabel(viewingSharedFrom != null ? 
-                "The album owner hasn't uploaded any photos here yet" : 
-                "Click 'Upload Photo' to get started!");
-            hintLabel.setFont(new Font("Arial", Font.PLAIN, 14));
-            hintLabel.setForeground(new Color(150, 150, 150));
-            hintLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
-            
-            messagePanel.add(iconLabel);
-            messagePanel.add(Box.createRigidArea(new Dimension(0, 15)));
-            messagePanel.add(emptyLabel);
-            messagePanel.add(Box.createRigidArea(new Dimension(0, 8)));
-            messagePanel.add(hintLabel);
-            
-            emptyPanel.add(messagePanel);
-            galleryPanel.setLayout(new BorderLayout());
-            galleryPanel.add(emptyPanel, BorderLayout.CENTER);
+        // The first page right away, the rest as the user scrolls towards them (loadNextPage),
+        // so the first photos appear just as fast in a huge album as in a small one
+        pageOwner = photoOwner;
+        pageAlbum = selectedAlbum.equals("All Images") ? null : selectedAlbum;
+        List<ImageInfo> firstPage = store.imagesPage(pageOwner, pageAlbum, null, PAGE_SIZE);
+        pagesExhausted = firstPage.size() < PAGE_SIZE;
+        int total = store.countImages(pageOwner, pageAlbum);
+        
+        if (firstPage.isEmpty()) {
+            photoGrid.setImages(firstPage);
+            galleryScroll.setViewportView(createEmptyPanel(
+                viewingSharedFrom != null ? "No photos in this shared album" : "No photos yet",
+                viewingSharedFrom != null ? 
+                    "The album owner hasn't uploaded any photos here yet" : 
+                    "Click 'Upload Photo' to get started!"));
         } else {
-            galleryPanel.setLayout(new GridLayout(0, 3, 15, 15));
-            for (ImageInfo info : filteredImages) {
-                galleryPanel.add(createPhotoCard(info));
-            }
+            showPhotoGrid();
+            photoGrid.setImages(firstPage);
         }
         
-        galleryPanel.revalidate();
-        galleryPanel.repaint();
+        galleryScroll.revalidate();
+        galleryScroll.repaint();
         
         String viewingText = viewingSharedFrom != null ? 
             " (Viewing " + viewingSharedFrom + "'s photos)" : "";
-        statusLabel.setText(filteredImages.size() + " photo(s) in " + selectedAlbum + viewingText);
+        statusLabel.setText(total + " photo(s) in " + selectedAlbum + viewingText);
+        // The query, the first page and its cards (not recorded when a search took over above)
+        REFRESH_TIMER.stop(start);
+    }
+    
+    // Fetches the page after the last photo in the grid on a background thread. A refresh
+    // in the meantime makes the result stale, and it is dropped.
+    private void loadNextPage() {
+        if (pageLoading || pagesExhausted) return;
+        ImageInfo after = photoGrid.getLastImage();
+        if (after == null) return;
+        pageLoading = true;
+        int generation = pageGeneration;
+        String owner = pageOwner;
+        String album = pageAlbum;
+        
+        new SwingWorker<List<ImageInfo>, Void>() {
+            protected List<ImageInfo> doInBackground() {
+                return store.imagesPage(owner, album, after, PAGE_SIZE);
+            }
+            
+            protected void done() {
+                if (generation != pageGeneration) return;
+                pageLoading = false;
+                try {
+                    List<ImageInfo> page = get();
+                    pagesExhausted = page.size() < PAGE_SIZE;
+                    if (!page.isEmpty()) {
+                        photoGrid.addImages(page); // May ask for the next page straight away
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    pagesExhausted = true;
+                }
+            }
+        }.execute();
+    }
+    
+    // Runs the query on a background worker and streams the ranked hits into the grid
+    // in chunks. A newer query (or leaving search) cancels it.
+    private void startSearch(String query, String photoOwner, String selectedAlbum) {
+        int generation = searchGeneration;
+        showPhotoGrid();
+        photoGrid.setImages(new ArrayList<>());
+        statusLabel.setText("Searching for \"" + query + "\"...");
+        
+        searchWorker = new SwingWorker<Integer, List<ImageInfo>>() {
+            protected Integer doInBackground() {
+                List<ImageInfo> chunk = new ArrayList<>();
+                int found = 0;
+                for (ImageInfo img : searchIndex.search(photoOwner, query)) {
+                    if (isCancelled()) return found;
+                    if (!selectedAlbum.equals("All Images") && !selectedAlbum.equals(img.album)) continue;
+                    chunk.add(img);
+                    found++;
+                    if (chunk.size() == SEARCH_CHUNK) {
+                        publish(chunk);
+                        chunk = new ArrayList<>();
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    publish(chunk);
+                }
+                return found;
+            }
+            
+            protected void process(List<List<ImageInfo>> chunks) {
+                if (generation != searchGeneration) return;
+                for (List<ImageInfo> chunk : chunks) {
+                    photoGrid.addImages(chunk);
+                }
+                statusLabel.setText(photoGrid.getImageCount() + " photo(s) matching \"" + query + "\"");
+            }
+            
+            protected void done() {
+                if (isCancelled() || generation != searchGeneration) return;
+                try {
+                    int found = get();
+                    if (found == 0) {
+                        galleryScroll.setViewportView(createEmptyPanel(
+                            "No photos found matching: " + query,
+                            "Try fewer or shorter words"));
+                        galleryScroll.revalidate();
+                        galleryScroll.repaint();
+                    }
+                    statusLabel.setText(found + " photo(s) matching \"" + query + "\"");
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    statusLabel.setText("Search failed: " + e.getMessage());
+                }
+            }
+        };
+        searchWorker.execute();
     }
     
-    private JPanel createPhotoCard(ImageInfo info) {
+    private void cancelSearch() {
+        searchGeneration++;
+        if (searchWorker != null) {
+            searchWorker.cancel(true);
+            searchWorker = null;
+        }
+    }
+    
+    private void showPhotoGrid() {
+        if (galleryScroll.getViewport().getView() != photoGrid) {
+            galleryScroll.setViewportView(photoGrid);
+        }
+    }
+    
+    private JPanel createEmptyPanel(String message, String hint) {
+        JPanel emptyPanel = new JPanel(new GridBagLayout());
+        emptyPanel.setBackground(new Color(245, 245, 245));
+        emptyPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
+        
+        JPanel messagePanel = new JPanel();
+        messagePanel.setLayout(new BoxLayout(messagePanel, BoxLayout.Y_AXIS));
+        messagePanel.setBackground(Color.WHITE);
+        messagePanel.setBorder(BorderFactory.createCompoundBorder(
+            BorderFactory.createLineBorder(new Color(220, 220, 220), 1),
+            BorderFactory.createEmptyBorder(40, 40, 40, 40)
+        ));
+        
+        JLabel iconLabel = new JLabel("📷");
+        iconLabel.setFont(new Font("Arial", Font.PLAIN, 60));
+        iconLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        JLabel emptyLabel = new JLabel(message);
+        emptyLabel.setFont(new Font("Arial", Font.BOLD, 18));
+        emptyLabel.setForeground(new Color(100, 100, 100));
+        emptyLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        JLabel hintLabel = new JLabel(hint);
+        hintLabel.setFont(new Font("Arial", Font.PLAIN, 14));
+        hintLabel.setForeground(new Color(150, 150, 150));
+        hintLabel.setAlignmentX(Component.CENTER_ALIGNMENT);
+        
+        messagePanel.add(iconLabel);
+        messagePanel.add(Box.createRigidArea(new Dimension(0, 15)));
+        messagePanel.add(emptyLabel);
+        messagePanel.add(Box.createRigidArea(new Dimension(0, 8)));
+        messagePanel.add(hintLabel);
+        
+        emptyPanel.add(messagePanel);
+        return emptyPanel;
+    }
+    
+    private JPanel createPhotoCard(ImageInfo info, ThumbnailLoader loader) {
         JPanel card = new JPanel(new BorderLayout(0, 0));
         card.setBackground(Color.WHITE);
         card.setBorder(BorderFactory.createCompoundBorder(
@@ -470,109 +836,125 @@ public class SimpleGallery extends JFrame {
             }
         });
         
-        try {
-            BufferedImage img = ImageIO.read(new File(IMAGES_DIR, info.fileName));
-            Image scaled = img.getScaledInstance(350, 280, Image.SCALE_SMOOTH);
-            JLabel imageLabel = new JLabel(new ImageIcon(scaled));
-            imageLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            imageLabel.setBackground(new Color(248, 248, 248));
-            imageLabel.setOpaque(true);
-            imageLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
-            imageLabel.addMouseListener(new MouseAdapter() {
-                public void mouseClicked(MouseEvent e) {
-                    showFullImage(info);
-                }
+        // Thumbnail is decoded in the background; show a placeholder until it arrives
+        JLabel imageLabel = new JLabel("Loading...");
+        imageLabel.setPreferredSize(new Dimension(ThumbnailLoader.THUMB_WIDTH, ThumbnailLoader.THUMB_HEIGHT));
+        imageLabel.setForeground(new Color(150, 150, 150));
+        imageLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        imageLabel.setBackground(new Color(248, 248, 248));
+        imageLabel.setOpaque(true);
+        imageLabel.setCursor(new Cursor(Cursor.HAND_CURSOR));
+        if (info.width > 0) {
+            imageLabel.setToolTipText(info.width + " × " + info.height + 
+                (info.captureTime != null ? ", taken " + info.captureTime : ""));
+        }
+        imageLabel.addMouseListener(new MouseAdapter() {
+            public void mouseClicked(MouseEvent e) {
+                showFullImage(info);
+            }
+        });
+        Future<?> thumbnailTask = loader.load(blobStore.file(info),
+            thumb -> {
+                imageLabel.setText(null);
+                imageLabel.setIcon(new ImageIcon(thumb));
+            },
+            () -> {
+                imageLabel.setText("❌ Error loading image");
+                imageLabel.setForeground(new Color(244, 67, 54));
+                imageLabel.setFont(new Font("Arial", Font.BOLD, 14));
             });
-            
-            // Info Panel with gradient-like effect
-            JPanel infoPanel = new JPanel();
-            infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
-            infoPanel.setBackground(Color.WHITE);
-            infoPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
-            
-            JLabel descLabel = new JLabel(truncate(info.description, 40));
-            descLabel.setFont(new Font("Arial", Font.BOLD, 14));
-            descLabel.setForeground(new Color(30, 30, 30));
-            descLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
-            
-            // Meta info with icons
-            JPanel metaPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
-            metaPanel.setBackground(Color.WHITE);
-            metaPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-            
-            JLabel uploaderLabel = new JLabel("👤 " + info.uploader);
-            uploaderLabel.setFont(new Font("Arial", Font.PLAIN, 11));
-            uploaderLabel.setForeground(new Color(100, 100, 100));
-            
-            JLabel dateLabel = new JLabel("  📅 " + info.uploadDate);
-            dateLabel.setFont(new Font("Arial", Font.PLAIN, 11));
-            dateLabel.setForeground(new Color(100, 100, 100));
-            
-            metaPanel.add(uploaderLabel);
-            metaPanel.add(dateLabel);
-            
-            // Album & Tags info
-            if (!info.album.equals("None") || !info.tags.isEmpty()) {
-                JPanel extraPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
-                extraPanel.setBackground(Color.WHITE);
-                extraPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-                
-                if (!info.album.equals("None")) {
-                    JLabel albumLabel = new JLabel("📁 " + info.album);
-                    albumLabel.setFont(new Font("Arial", Font.PLAIN, 11));
-                    albumLabel.setForeground(new Color(100, 100, 100));
-                    extraPanel.add(albumLabel);
-                }
-                
-                if (!info.tags.isEmpty()) {
-                    JLabel tagsLabel = new JLabel("  🏷️ " + truncate(info.tags, 20));
-                    tagsLabel.setFont(new Font("Arial", Font.PLAIN, 11));
-                    tagsLabel.setForeground(new Color(100, 100, 100));
-                    extraPanel.add(tagsLabel);
-                }
-                
-                infoPanel.add(extraPanel);
-                infoPanel.add(Box.createRigidArea(new Dimension(0, 8)));
+        card.putClientProperty("thumbnailTask", thumbnailTask);
+        
+        // Info Panel with gradient-like effect
+        JPanel infoPanel = new JPanel();
+        infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
+        infoPanel.setBackground(Color.WHITE);
+        infoPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+        
+        JLabel descLabel = new JLabel(truncate(info.description, 40));
+        descLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        descLabel.setForeground(new Color(30, 30, 30));
+        descLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        
+        // Meta info with icons
+        JPanel metaPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        metaPanel.setBackground(Color.WHITE);
+        metaPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        
+        JLabel uploaderLabel = new JLabel("👤 " + info.uploader);
+        uploaderLabel.setFont(new Font("Arial", Font.PLAIN, 11));
+        uploaderLabel.setForeground(new Color(100, 100, 100));
+        
+        JLabel dateLabel = new JLabel("  📅 " + info.uploadDate);
+        dateLabel.setFont(new Font("Arial", Font.PLAIN, 11));
+        dateLabel.setForeground(new Color(100, 100, 100));
+        
+        metaPanel.add(uploaderLabel);
+        metaPanel.add(dateLabel);
+        
+        // Album & Tags info
+        if (!info.album.equals("None") || !info.tags.isEmpty()) {
+            JPanel extraPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+            extraPanel.setBackground(Color.WHITE);
+            extraPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+            
+            if (!info.album.equals("None")) {
+                JLabel albumLabel = new JLabel("📁 " + info.album);
+                albumLabel.setFont(new Font("Arial", Font.PLAIN, 11));
+                albumLabel.setForeground(new Color(100, 100, 100));
+                extraPanel.add(albumLabel);
             }
             
-            // Buttons with better styling
-            JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
-            buttonPanel.setBackground(Color.WHITE);
-            buttonPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
-            
-            JButton viewBtn = createCardButton("👁️ View", new Color(63, 81, 181));
-            viewBtn.addActionListener(e -> showFullImage(info));
-            
-            JButton downloadBtn = createCardButton("⬇️ Download", new Color(76, 175, 80));
-            downloadBtn.addActionListener(e -> downloadPhoto(info));
-            
-            JButton deleteBtn = createCardButton("🗑️ Delete", new Color(244, 67, 54));
-            deleteBtn.addActionListener(e -> deletePhoto(info));
-            
-            buttonPanel.add(viewBtn);
-            buttonPanel.add(downloadBtn);
-            buttonPanel.add(deleteBtn);
+            if (!info.tags.isEmpty()) {
+                JLabel tagsLabel = new JLabel("  🏷️ " + truncate(info.tags, 20));
+                tagsLabel.setFont(new Font("Arial", Font.PLAIN, 11));
+                tagsLabel.setForeground(new Color(100, 100, 100));
+                extraPanel.add(tagsLabel);
+            }
             
-            infoPanel.add(descLabel);
+            infoPanel.add(extraPanel);
             infoPanel.add(Box.createRigidArea(new Dimension(0, 8)));
-            infoPanel.add(metaPanel);
-            infoPanel.add(Box.createRigidArea(new Dimension(0, 10)));
-            infoPanel.add(buttonPanel);
-            
-            card.add(imageLabel, BorderLayout.CENTER);
-            card.add(infoPanel, BorderLayout.SOUTH);
-            
-        } catch (IOException e) {
-            JLabel errorLabel = new JLabel("❌ Error loading image");
-            errorLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            errorLabel.setForeground(new Color(244, 67, 54));
-            errorLabel.setFont(new Font("Arial", Font.BOLD, 14));
-            card.add(errorLabel, BorderLayout.CENTER);
         }
         
+        // Buttons with better styling
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        buttonPanel.setBackground(Color.WHITE);
+        buttonPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        
+        JButton viewBtn = createCardButton("👁️ View", new Color(63, 81, 181));
+        viewBtn.addActionListener(e -> showFullImage(info));
+        
+        JButton downloadBtn = createCardButton("⬇️ Download", new Color(76, 175, 80));
+        downloadBtn.addActionListener(e -> downloadPhoto(info));
+        
+        JButton deleteBtn = createCardButton("🗑️ Delete", new Color(244, 67, 54));
+        deleteBtn.addActionListener(e -> deletePhoto(info));
+        
+        buttonPanel.add(viewBtn);
+        buttonPanel.add(downloadBtn);
+        buttonPanel.add(deleteBtn);
+        
+        infoPanel.add(descLabel);
+        infoPanel.add(Box.createRigidArea(new Dimension(0, 8)));
+        infoPanel.add(metaPanel);
+        infoPanel.add(Box.createRigidArea(new Dimension(0, 10)));
+        infoPanel.add(buttonPanel);
+        
+        card.add(imageLabel, BorderLayout.CENTER);
+        card.add(infoPanel, BorderLayout.SOUTH);
+        
+        
         return card;
     }
     
+    // Called by PhotoGrid when a card scrolls out of view
+    private void releasePhotoCard(JComponent card) {
+        Object task = card.getClientProperty("thumbnailTask");
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(true);
+        }
+    }
+    
     private JButton createCardButton(String text, Color bgColor) {
         JButton btn = new JButton(text);
         btn.setFont(new Font("Arial", Font.BOLD, 11));
@@ -600,46 +982,85 @@ public class SimpleGallery extends JFrame {
         JDialog dialog = new JDialog(this, "Photo Viewer", true);
         dialog.setLayout(new BorderLayout());
         
+        TiledImageViewer viewer;
         try {
-            BufferedImage img = ImageIO.read(new File(IMAGES_DIR, info.fileName));
-            
-            // Scale to fit screen
-            int maxWidth = 900;
-            int maxHeight = 700;
-            double scale = Math.min((double)maxWidth / img.getWidth(), (double)maxHeight / img.getHeight());
-            int scaledWidth = (int)(img.getWidth() * scale);
-            int scaledHeight = (int)(img.getHeight() * scale);
-            
-            Image scaled = img.getScaledInstance(scaledWidth, scaledHeight, Image.SCALE_SMOOTH);
-            JLabel imageLabel = new JLabel(new ImageIcon(scaled));
-            imageLabel.setHorizontalAlignment(SwingConstants.CENTER);
-            
-            JPanel infoPanel = new JPanel();
-            infoPanel.setBackground(Color.WHITE);
-            infoPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
-            infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
-            
-            JLabel descLabel = new JLabel(info.description);
-            descLabel.setFont(new Font("Arial", Font.BOLD, 14));
-            JLabel uploaderLabel = new JLabel("Uploaded by: " + info.uploader);
-            uploaderLabel.setFont(new Font("Arial", Font.PLAIN, 12));
-            JLabel dateLabel = new JLabel("Date: " + info.uploadDate);
-            dateLabel.setFont(new Font("Arial", Font.PLAIN, 12));
-            
-            infoPanel.add(descLabel);
-            infoPanel.add(uploaderLabel);
-            infoPanel.add(dateLabel);
-            
-            dialog.add(new JScrollPane(imageLabel), BorderLayout.CENTER);
-            dialog.add(infoPanel, BorderLayout.SOUTH);
-            
-            dialog.setSize(1000, 800);
-            dialog.setLocationRelativeTo(this);
-            dialog.setVisible(true);
-            
+            viewer = new TiledImageViewer(blobStore.file(info), imageCache);
         } catch (IOException e) {
             JOptionPane.showMessageDialog(this, "Error loading image", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        
+        // Scale to fit screen; tiles are decoded at whatever zoom the user picks
+        int maxWidth = 900;
+        int maxHeight = 700;
+        double fit = info.width > 0 && info.height > 0 
+            ? Math.min((double) maxWidth / info.width, (double) maxHeight / info.height) 
+            : viewer.fitZoom(maxWidth, maxHeight);
+        viewer.setZoom(fit, null);
+        
+        JScrollPane viewerScroll = new JScrollPane(viewer);
+        viewerScroll.setBorder(null);
+        viewerScroll.getViewport().setBackground(viewer.getBackground());
+        
+        // Zoom controls
+        JPanel zoomPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 6, 0));
+        zoomPanel.setBackground(Color.WHITE);
+        zoomPanel.setBorder(BorderFactory.createEmptyBorder(8, 15, 8, 15));
+        
+        JLabel zoomLabel = new JLabel();
+        zoomLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        zoomLabel.setBorder(BorderFactory.createEmptyBorder(0, 10, 0, 0));
+        Runnable updateZoomLabel = () -> zoomLabel.setText(Math.round(viewer.getZoom() * 100) + "%  •  " +
+            viewer.getImageWidth() + " × " + viewer.getImageHeight() + "  •  Ctrl + wheel to zoom, drag to pan");
+        viewer.setZoomListener(updateZoomLabel);
+        updateZoomLabel.run();
+        
+        JButton zoomOutBtn = createCardButton("➖", new Color(63, 81, 181));
+        zoomOutBtn.addActionListener(e -> viewer.zoomBy(1 / 1.25));
+        JButton zoomInBtn = createCardButton("➕", new Color(63, 81, 181));
+        zoomInBtn.addActionListener(e -> viewer.zoomBy(1.25));
+        JButton fitBtn = createCardButton("Fit", new Color(63, 81, 181));
+        fitBtn.addActionListener(e -> viewer.zoomToFit());
+        JButton actualBtn = createCardButton("100%", new Color(63, 81, 181));
+        actualBtn.addActionListener(e -> viewer.setZoom(1.0, null));
+        
+        zoomPanel.add(zoomOutBtn);
+        zoomPanel.add(zoomInBtn);
+        zoomPanel.add(fitBtn);
+        zoomPanel.add(actualBtn);
+        zoomPanel.add(zoomLabel);
+        
+        JPanel infoPanel = new JPanel();
+        infoPanel.setBackground(Color.WHITE);
+        infoPanel.setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+        infoPanel.setLayout(new BoxLayout(infoPanel, BoxLayout.Y_AXIS));
+        
+        JLabel descLabel = new JLabel(info.description);
+        descLabel.setFont(new Font("Arial", Font.BOLD, 14));
+        JLabel uploaderLabel = new JLabel("Uploaded by: " + info.uploader);
+        uploaderLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        JLabel dateLabel = new JLabel("Date: " + info.uploadDate);
+        dateLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+        
+        infoPanel.add(descLabel);
+        infoPanel.add(uploaderLabel);
+        infoPanel.add(dateLabel);
+        if (info.captureTime != null) {
+            JLabel takenLabel = new JLabel("Taken: " + info.captureTime);
+            takenLabel.setFont(new Font("Arial", Font.PLAIN, 12));
+            infoPanel.add(takenLabel);
         }
+        
+        dialog.add(zoomPanel, BorderLayout.NORTH);
+        dialog.add(viewerScroll, BorderLayout.CENTER);
+        dialog.add(infoPanel, BorderLayout.SOUTH);
+        
+        dialog.setSize(1000, 800);
+        dialog.setLocationRelativeTo(this);
+        dialog.setVisible(true);
+        
+        // Modal dialog: we get here once it is closed
+        viewer.close();
     }
     
     private void downloadPhoto(ImageInfo info) {
@@ -649,7 +1070,7 @@ public class SimpleGallery extends JFrame {
         if (chooser.showSaveDialog(this) == JFileChooser.APPROVE_OPTION) {
             try {
                 Files.copy(
-                    Paths.get(IMAGES_DIR, info.fileName),
+                    blobStore.file(info).toPath(),
                     chooser.getSelectedFile().toPath(),
                     StandardCopyOption.REPLACE_EXISTING
                 );
@@ -677,9 +1098,22 @@ public class SimpleGallery extends JFrame {
             
         if (confirm == JOptionPane.YES_OPTION) {
             try {
-                Files.deleteIfExists(Paths.get(IMAGES_DIR, info.fileName));
-                images.remove(info);
-                saveImages();
+                // Shared bytes stay until the last photo using them is deleted
+                boolean bytesDeleted = true;
+                if (info.blob != null) {
+                    bytesDeleted = blobStore.release(info.blob);
+                } else {
+                    Files.deleteIfExists(blobStore.file(info).toPath());
+                }
+                if (bytesDeleted) {
+                    String storedName = blobStore.file(info).getName();
+                    thumbnailStore.invalidate(storedName);
+                    imageCache.invalidate(storedName);
+                }
+                // info may come from a repository page, which need not be the listed object
+                images.removeIf(img -> img.fileName.equals(info.fileName));
+                searchIndex.remove(info);
+                store.imageRemoved(info);
                 refreshGallery();
                 statusLabel.setText("Photo deleted successfully!");
             } catch (IOException e) {
@@ -688,101 +1122,84 @@ public class SimpleGallery extends JFrame {
         }
     }
     
-    private void loadImages() {
+    private void loadMetadata() {
         images.clear();
-        File dataFile = new File(DATA_FILE);
-        if (dataFile.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(dataFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 4) {
-                        String album = parts.length > 4 ? parts[4] : "None";
-                        String tags = parts.length > 5 ? parts[5] : "";
-                        images.add(new ImageInfo(parts[0], parts[1], parts[2], parts[3], album, tags));
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        albums.clear();
+        List<ShareInfo> shares = new ArrayList<>();
+        store.load(images, albums, shares, searchIndex);
+        shareRegistry.rebuild(shares);
+        sweepExpiredShares();
+        
+        // One-time move of photos from images/ into the blob store
+        // Thumbnails are rebuilt under the new blob name
+        List<ImageInfo> migrated = blobStore.migrate(images, thumbnailStore::invalidate);
+        if (!migrated.isEmpty()) {
+            store.imagesAdded(migrated);
         }
+        blobStore.rebuildRefs(images);
+        backfillImageHeaders();
     }
     
-    private void saveImages() {
-        try {
-            Files.createDirectories(Paths.get("gallery_data"));
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(DATA_FILE))) {
-                for (ImageInfo info : images) {
-                    writer.write(info.fileName + "|" + info.description + "|" + info.uploader + "|" + 
-                                info.uploadDate + "|" + info.album + "|" + info.tags);
-                    writer.newLine();
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+    // Photos saved before ImageInfo kept header metadata get it here: the headers are read
+    // in the background, and whatever has been read is saved in batches on the EDT
+    private void backfillImageHeaders() {
+        if (headerBackfill != null) {
+            headerBackfill.cancel(false);
+            headerBackfill = null;
         }
-    }
-    
-    private void loadAlbums() {
-        albums.clear();
-        File albumFile = new File(ALBUMS_FILE);
-        if (albumFile.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(albumFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length == 3) {
-                        albums.add(new AlbumInfo(parts[0], parts[1], parts[2]));
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        List<ImageInfo> missing = new ArrayList<>();
+        for (ImageInfo img : images) {
+            if (img.width == 0) missing.add(img);
         }
-    }
-    
-    private void saveAlbums() {
-        try {
-            Files.createDirectories(Paths.get("gallery_data"));
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(ALBUMS_FILE))) {
-                for (AlbumInfo album : albums) {
-                    writer.write(album.name + "|" + album.description + "|" + album.owner);
-                    writer.newLine();
+        if (missing.isEmpty()) return;
+        
+        headerBackfill = new SwingWorker<Void, Map.Entry<ImageInfo, ImageHeader>>() {
+            protected Void doInBackground() {
+                for (ImageInfo img : missing) {
+                    if (isCancelled()) break;
+                    try {
+                        publish(new AbstractMap.SimpleImmutableEntry<>(img, ImageHeader.read(blobStore.file(img))));
+                    } catch (IOException e) {
+                        // Missing or unreadable file; it is tried again on the next start
+                    }
                 }
+                return null;
             }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-    
-    private void loadShares() {
-        shares.clear();
-        File shareFile = new File(SHARES_FILE);
-        if (shareFile.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(shareFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length == 7) {
-                        shares.add(new ShareInfo(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5], parts[6]));
+            
+            protected void process(List<Map.Entry<ImageInfo, ImageHeader>> headers) {
+                if (isCancelled()) return;
+                List<ImageInfo> changed = new ArrayList<>(headers.size());
+                for (Map.Entry<ImageInfo, ImageHeader> e : headers) {
+                    // Skip photos deleted meanwhile, saving them would bring them back
+                    if (store.image(e.getKey().fileName) != null) {
+                        e.getValue().applyTo(e.getKey());
+                        changed.add(e.getKey());
                     }
                 }
-            } catch (IOException e) {
-                e.printStackTrace();
+                if (!changed.isEmpty()) {
+                    store.imagesAdded(changed);
+                }
             }
-        }
+        };
+        headerBackfill.execute();
     }
     
-    private void saveShares() {
+    // Folds the metadata journal back into the snapshot files once it has grown. The lists
+    // are copied here on the EDT; the files are written on a background thread.
+    private void compactMetadataIfNeeded() {
+        if (compacting || !store.needsCompaction()) return;
         try {
-            Files.createDirectories(Paths.get("gallery_data"));
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(SHARES_FILE))) {
-                for (ShareInfo share : shares) {
-                    writer.write(share.token + "|" + share.albumName + "|" + share.sharedBy + "|" + 
-                                share.createdAt + "|" + share.expiresAt + "|" + share.permission + "|" + share.password);
-                    writer.newLine();
-                }
-            }
+            List<ImageInfo> imagesCopy = new ArrayList<>(images);
+            List<AlbumInfo> albumsCopy = new ArrayList<>(albums);
+            List<ShareInfo> sharesCopy = shareRegistry.all();
+            int rotatedRecords = store.beginCompaction();
+            compacting = true;
+            Thread compactor = new Thread(() -> {
+                store.compact(imagesCopy, albumsCopy, sharesCopy, rotatedRecords);
+                SwingUtilities.invokeLater(() -> compacting = false);
+            }, "metadata-compactor");
+            compactor.setDaemon(false); // Let a snapshot write finish even if the window closes
+            compactor.start();
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -831,8 +1248,9 @@ public class SimpleGallery extends JFrame {
                 }
             }
             
-            albums.add(new AlbumInfo(name, desc, currentUser));
-            saveAlbums();
+            AlbumInfo album = new AlbumInfo(name, desc, currentUser);
+            albums.add(album);
+            store.albumAdded(album);
             
             // Update album selector
             albumSelector.addItem(name);
@@ -925,8 +1343,8 @@ public class SimpleGallery extends JFrame {
             String expiresAt = calculateExpiry(expiresOption);
             
             ShareInfo share = new ShareInfo(token, albumName, currentUser, createdAt, expiresAt, permission, password);
-            shares.add(share);
-            saveShares();
+            shareRegistry.add(share);
+            store.shareAdded(share);
             
             // Show success dialog with copy button
             JDialog successDialog = new JDialog(dialog, "Share Link Created!", true);
@@ -1071,27 +1489,21 @@ public class SimpleGallery extends JFrame {
                 return;
             }
             
-            // Find share
-            ShareInfo foundShare = null;
-            for (ShareInfo share : shares) {
-                if (share.token.equals(token)) {
-                    foundShare = share;
-                    break;
-                }
-            }
+            // Find share (expired ones are swept away, so an old token may simply be gone)
+            long start = SHARE_LOOKUP_TIMER.start();
+            ShareInfo foundShare = shareRegistry.get(token);
+            boolean expired = foundShare != null && shareRegistry.isExpired(token, System.currentTimeMillis());
+            SHARE_LOOKUP_TIMER.stop(start);
             
             if (foundShare == null) {
-                JOptionPane.showMessageDialog(dialog, "Invalid token!", "Error", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(dialog, "Invalid or expired token!", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
             
             // Check expiry
-            if (!foundShare.expiresAt.equals("Never")) {
-                LocalDateTime expiry = LocalDateTime.parse(foundShare.expiresAt, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-                if (LocalDateTime.now().isAfter(expiry)) {
-                    JOptionPane.showMessageDialog(dialog, "This share link has expired!", "Error", JOptionPane.ERROR_MESSAGE);
-                    return;
-                }
+            if (expired) {
+                JOptionPane.showMessageDialog(dialog, "This share link has expired!", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
             }
             
             // Check password
@@ -1154,16 +1566,22 @@ public class SimpleGallery extends JFrame {
             case "30 Days": expiry = expiry.plusDays(30); break;
         }
         
-        return expiry.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+        return expiry.format(ShareRegistry.EXPIRY_FORMAT);
     }
     
-    private void viewMyShares() {
-        List<ShareInfo> myShares = new ArrayList<>();
-        for (ShareInfo share : shares) {
-            if (share.sharedBy.equals(currentUser)) {
-                myShares.add(share);
-            }
+    private void sweepExpiredShares() {
+        List<ShareInfo> expired = shareRegistry.sweep(System.currentTimeMillis());
+        if (expired.isEmpty()) return;
+        List<String> tokens = new ArrayList<>(expired.size());
+        for (ShareInfo share : expired) {
+            tokens.add(share.token);
         }
+        store.sharesRemoved(tokens);
+    }
+    
+    private void viewMyShares() {
+        sweepExpiredShares();
+        List<ShareInfo> myShares = shareRegistry.byOwner(currentUser);
         
         if (myShares.isEmpty()) {
             JOptionPane.showMessageDialog(this, "You haven't created any share links yet!", "No Shares", JOptionPane.INFORMATION_MESSAGE);
@@ -1177,20 +1595,16 @@ public class SimpleGallery extends JFrame {
         
         String[] columns = {"Token", "Album", "Permission", "Created", "Expires", "Status"};
         Object[][] data = new Object[myShares.size()][6];
+        long now = System.currentTimeMillis();
         
         for (int i = 0; i < myShares.size(); i++) {
             ShareInfo share = myShares.get(i);
             String status = "Active";
             
-            if (!share.expiresAt.equals("Never")) {
-                try {
-                    LocalDateTime expiry = LocalDateTime.parse(share.expiresAt, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
-                    if (LocalDateTime.now().isAfter(expiry)) {
-                        status = "Expired";
-                    }
-                } catch (Exception e) {
-                    status = "Unknown";
-                }
+            if (shareRegistry.hasUnknownExpiry(share.token)) {
+                status = "Unknown";
+            } else if (shareRegistry.isExpired(share.token, now)) {
+                status = "Expired";
             }
             
             data[i][0] = share.token;
@@ -1251,8 +1665,8 @@ public class SimpleGallery extends JFrame {
                     "Confirm", 
                     JOptionPane.YES_NO_OPTION);
                 if (confirm == JOptionPane.YES_OPTION) {
-                    shares.removeIf(s -> s.token.equals(token));
-                    saveShares();
+                    shareRegistry.remove(token);
+                    store.shareRemoved(token);
                     dialog.dispose();
                     viewMyShares();
                 }
@@ -1280,55 +1694,8 @@ public class SimpleGallery extends JFrame {
     }
     
     private void searchPhotos() {
-        String searchTerm = JOptionPane.showInputDialog(this, 
-            "Enter search term (description or tags):", 
-            "Search Photos", 
-            JOptionPane.PLAIN_MESSAGE);
-        
-        if (searchTerm == null || searchTerm.trim().isEmpty()) {
-            return;
-        }
-        
-        searchTerm = searchTerm.toLowerCase();
-        List<ImageInfo> results = new ArrayList<>();
-        
-        // Only search current user's photos
-        for (ImageInfo img : images) {
-            if (img.uploader.equals(currentUser)) {
-                if (img.description.toLowerCase().contains(searchTerm) || 
-                    img.tags.toLowerCase().contains(searchTerm)) {
-                    results.add(img);
-                }
-            }
-        }
-        
-        if (results.isEmpty()) {
-            JOptionPane.showMessageDialog(this, 
-                "No photos found matching: " + searchTerm, 
-                "Search Results", 
-                JOptionPane.INFORMATION_MESSAGE);
-            return;
-        }
-        
-        // Show results in a dialog
-        JDialog dialog = new JDialog(this, "Search Results: " + results.size() + " photo(s)", false);
-        dialog.setLayout(new BorderLayout());
-        dialog.setSize(1000, 700);
-        dialog.setLocationRelativeTo(this);
-        
-        JPanel resultsPanel = new JPanel(new GridLayout(0, 3, 15, 15));
-        resultsPanel.setBackground(new Color(245, 245, 245));
-        resultsPanel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
-        
-        for (ImageInfo info : results) {
-            resultsPanel.add(createPhotoCard(info));
-        }
-        
-        JScrollPane scrollPane = new JScrollPane(resultsPanel);
-        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
-        
-        dialog.add(scrollPane, BorderLayout.CENTER);
-        dialog.setVisible(true);
+        searchField.requestFocusInWindow();
+        searchField.selectAll();
     }
     
     private void manageFamilyMembers() {
@@ -1452,6 +1819,43 @@ public class SimpleGallery extends JFrame {
         dialog.setVisible(true);
     }
     
+    // Not modal, so the timings can be watched while using the gallery
+    private void showDiagnostics() {
+        JDialog dialog = new JDialog(this, "📈 Diagnostics", false);
+        dialog.setLayout(new BorderLayout());
+        dialog.setSize(620, 480);
+        dialog.setLocationRelativeTo(this);
+        
+        DiagnosticsPanel panel = new DiagnosticsPanel(imageCache);
+        
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.CENTER, 10, 10));
+        buttonPanel.setBackground(Color.WHITE);
+        
+        JButton resetBtn = new JButton("Reset");
+        resetBtn.setBackground(new Color(158, 158, 158));
+        resetBtn.setForeground(Color.WHITE);
+        resetBtn.setFocusPainted(false);
+        resetBtn.setBorder(BorderFactory.createEmptyBorder(8, 20, 8, 20));
+        resetBtn.addActionListener(e -> {
+            Metrics.resetAll();
+            panel.update();
+        });
+        
+        JButton closeBtn = new JButton("Close");
+        closeBtn.setBackground(new Color(63, 81, 181));
+        closeBtn.setForeground(Color.WHITE);
+        closeBtn.setFocusPainted(false);
+        closeBtn.setBorder(BorderFactory.createEmptyBorder(8, 20, 8, 20));
+        closeBtn.addActionListener(e -> dialog.dispose());
+        
+        buttonPanel.add(resetBtn);
+        buttonPanel.add(closeBtn);
+        
+        dialog.add(panel, BorderLayout.CENTER);
+        dialog.add(buttonPanel, BorderLayout.SOUTH);
+        dialog.setVisible(true);
+    }
+    
     private String truncate(String text, int length) {
         if (text.length() <= length) return text;
         return text.substring(0, length - 3) + "...";
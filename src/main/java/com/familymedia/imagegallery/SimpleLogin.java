@@ -173,19 +173,8 @@ public class SimpleLogin extends JFrame {
         }
         
         // Check credentials
-        String fullName = null;
-        String role = null;
-        
-        if (username.equals("john") && password.equals("admin123")) {
-            fullName = "John Doe";
-            role = "Admin";
-        } else if (username.equals("jane") && password.equals("parent123")) {
-            fullName = "Jane Smith";
-            role = "Parent";
-        } else if (username.equals("tom") && password.equals("child123")) {
-            fullName = "Tom Wilson";
-            role = "Child";
-        } else {
+        String fullName = authenticate(username, password);
+        if (fullName == null) {
             JOptionPane.showMessageDialog(this, 
                 "Invalid username or password!", 
                 "Login Error", 
@@ -198,6 +187,19 @@ public class SimpleLogin extends JFrame {
         new SimpleGallery(fullName);
     }
     
+    // The full name photos are stored under, or null if the login is wrong.
+    // Also used by the HTTP server (GalleryServer).
+    static String authenticate(String username, String password) {
+        if (username.equals("john") && password.equals("admin123")) {
+            return "John Doe";
+        } else if (username.equals("jane") && password.equals("parent123")) {
+            return "Jane Smith";
+        } else if (username.equals("tom") && password.equals("child123")) {
+            return "Tom Wilson";
+        }
+        return null;
+    }
+    
     public static void main(String[] args) {
         SwingUtilities.invokeLater(() -> new SimpleLogin());
     }
@@ -0,0 +1,140 @@
+package com.familymedia.imagegallery;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+
+// File copies that read every byte once. copy() moves the data through one large direct
+// buffer: each chunk is written to the target, fed to the SHA-256 digest and, for the
+// first few hundred KB, kept for the header probe (format and dimensions) and the
+// ImageHeader metadata, so importing a photo no longer means a copy, a second read to
+// hash it and a third to check it.
+//
+// Plain copies (downloads) stay on Files.copy: it already copies inside the OS and
+// measured faster than FileChannel.transferTo.
+class StreamingCopy {
+    static final int BUFFER_SIZE = 1 << 20;
+    // JPEG dimensions sit behind the EXIF block, which is at most 64 KB but may be followed
+    // by other APP segments; this comfortably covers real camera files
+    static final int HEADER_BYTES = 256 * 1024;
+
+    static class Result {
+        final String sha256;
+        final long size;
+        final String format; // null if no image reader understood the header
+        final int width;
+        final int height;
+        final ImageHeader header; // null if the header was not understood
+
+        Result(String sha256, long size, String format, int width, int height, ImageHeader header) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.format = format;
+            this.width = width;
+            this.height = height;
+            this.header = header;
+        }
+
+        boolean isImage() {
+            return format != null && width > 0 && height > 0;
+        }
+    }
+
+    // Buffers are large and direct, so keep one per thread instead of one per copy
+    private static final ThreadLocal<ByteBuffer> BUFFERS =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+
+    static Result copy(Path source, Path target) throws IOException {
+        MessageDigest digest = sha256();
+        byte[] header = new byte[HEADER_BYTES];
+        int headerLength = 0;
+        long size = 0;
+
+        ByteBuffer buffer = BUFFERS.get();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE,
+                                                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (true) {
+                buffer.clear();
+                int read = in.read(buffer);
+                if (read < 0) break;
+                buffer.flip();
+
+                if (headerLength < HEADER_BYTES) {
+                    int n = Math.min(read, HEADER_BYTES - headerLength);
+                    buffer.duplicate().get(header, headerLength, n);
+                    headerLength += n;
+                }
+                digest.update(buffer.duplicate());
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                size += read;
+            }
+        }
+
+        Result probed = probe(header, headerLength);
+        return new Result(hex(digest.digest()), size, probed.format, probed.width, probed.height,
+                          ImageHeader.parse(header, headerLength));
+    }
+
+    // SHA-256 of a file, read once through the same direct buffer
+    static String hash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        ByteBuffer buffer = BUFFERS.get();
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (true) {
+                buffer.clear();
+                if (in.read(buffer) < 0) break;
+                buffer.flip();
+                digest.update(buffer);
+            }
+        }
+        return hex(digest.digest());
+    }
+
+    private static Result probe(byte[] header, int length) {
+        // MemoryCacheImageInputStream directly, ImageIO would spool the bytes to a temp file
+        try (ImageInputStream in = new MemoryCacheImageInputStream(new ByteArrayInputStream(header, 0, length))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext()) {
+                return new Result(null, 0, null, 0, 0, null);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return new Result(null, 0, reader.getFormatName().toLowerCase(), reader.getWidth(0), reader.getHeight(0), null);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Header cut off before the dimensions, or not an image at all
+            return new Result(null, 0, null, 0, 0, null);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static MessageDigest sha256() throws IOException {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.familymedia.imagegallery;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// Fetches photo previews from the ImageCache, or from the ThumbnailStore on a small shared
+// worker pool, and hands the finished thumbnails back on the EDT. When the grid is
+// refreshed, cancelAll() drops the pending work, and thumbnails still in flight for the
+// old cards are never delivered.
+class ThumbnailLoader {
+    static final int THUMB_WIDTH = 350;
+    static final int THUMB_HEIGHT = 280;
+
+    private static final ExecutorService WORKERS = createWorkers();
+
+    private final ThumbnailStore store;
+    private final ImageCache cache;
+    private final Set<Future<?>> pending = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private volatile int generation = 0;
+
+    ThumbnailLoader(ThumbnailStore store, ImageCache cache) {
+        this.store = store;
+        this.cache = cache;
+    }
+
+    private static ExecutorService createWorkers() {
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "thumbnail-" + count.incrementAndGet());
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    // Queues a thumbnail for the given file. Exactly one of the callbacks runs on the EDT,
+    // unless the task is cancelled first. Cache hits are delivered straight away.
+    Future<?> load(File file, Consumer<Image> onLoaded, Runnable onFailed) {
+        BufferedImage cached = cache.get(cacheKey(file));
+        if (cached != null) {
+            onLoaded.accept(cached);
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        ThumbnailTask task = new ThumbnailTask(file, generation, onLoaded, onFailed);
+        pending.add(task);
+        WORKERS.execute(task);
+        return task;
+    }
+
+    // Drops everything queued or running for this group. Results that are already on
+    // their way to the EDT are discarded as well.
+    void cancelAll() {
+        generation++;
+        for (Future<?> task : pending) {
+            task.cancel(true);
+        }
+        pending.clear();
+    }
+
+    private static String cacheKey(File file) {
+        return ImageCache.key(file.getName(), "thumb");
+    }
+
+    private BufferedImage fetch(File file) throws IOException {
+        BufferedImage thumb = store.load(file);
+        cache.put(cacheKey(file), thumb);
+        return thumb;
+    }
+
+    private class ThumbnailTask extends FutureTask<BufferedImage> {
+        private final int taskGeneration;
+        private final Consumer<Image> onLoaded;
+        private final Runnable onFailed;
+
+        ThumbnailTask(File file, int taskGeneration, Consumer<Image> onLoaded, Runnable onFailed) {
+            super(() -> fetch(file));
+            this.taskGeneration = taskGeneration;
+            this.onLoaded = onLoaded;
+            this.onFailed = onFailed;
+        }
+
+        @Override
+        protected void done() {
+            pending.remove(this);
+            if (isCancelled()) return;
+
+            BufferedImage thumb;
+            try {
+                thumb = get();
+            } catch (InterruptedException | ExecutionException e) {
+                thumb = null;
+            }
+
+            BufferedImage result = thumb;
+            SwingUtilities.invokeLater(() -> {
+                if (isCancelled() || taskGeneration != generation) return;
+                if (result != null) {
+                    onLoaded.accept(result);
+                } else {
+                    onFailed.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.familymedia.imagegallery;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// On-disk cache of card-sized previews, one file per photo under gallery_data/thumbs.
+// Each thumbnail starts with the size and modification time of the original it was made
+// from, so a replaced original is detected and its thumbnail rebuilt on the next read.
+class ThumbnailStore {
+    private static final int MAGIC = 0x464D4754; // "FMGT"
+    // magic, original size, original modification time; the JPEG follows
+    static final int HEADER_BYTES = 20;
+    private static final Metrics.Timer READ_TIMER = Metrics.timer("thumbnail.read");
+    private static final Metrics.Counter DISK_HITS = Metrics.counter("thumbnailStore.hits");
+    private static final Metrics.Counter DISK_MISSES = Metrics.counter("thumbnailStore.misses");
+
+    private final Path dir;
+    private final ConcurrentHashMap<String, Object> inFlight = new ConcurrentHashMap<>();
+
+    ThumbnailStore(String dir) {
+        this.dir = Paths.get(dir);
+    }
+
+    // Returns the stored thumbnail for the original, generating and saving it first
+    // when it is missing or stale. Safe to call from several worker threads at once.
+    BufferedImage load(File source) throws IOException {
+        String key = source.getName();
+        Object lock = inFlight.computeIfAbsent(key, k -> new Object());
+        synchronized (lock) {
+            try {
+                long size = source.length();
+                long modified = source.lastModified();
+
+                BufferedImage cached = read(thumbPath(key), size, modified);
+                if (cached != null) {
+                    DISK_HITS.increment();
+                    return cached;
+                }
+                DISK_MISSES.increment();
+
+                BufferedImage thumb = ImageDecoder.decodeThumbnail(source, ThumbnailLoader.THUMB_WIDTH, ThumbnailLoader.THUMB_HEIGHT);
+                write(thumbPath(key), thumb, size, modified);
+                return thumb;
+            } finally {
+                inFlight.remove(key, lock);
+            }
+        }
+    }
+
+    // The stored thumbnail file for the original, made first if needed. Its JPEG bytes start
+    // at HEADER_BYTES, so they can be sent as they are without decoding anything.
+    Path jpeg(File source) throws IOException {
+        Path path = thumbPath(source.getName());
+        if (isCurrent(path, source.length(), source.lastModified())) {
+            DISK_HITS.increment();
+        } else {
+            load(source);
+        }
+        return path;
+    }
+
+    private static boolean isCurrent(Path path, long size, long modified) {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            return in.readInt() == MAGIC && in.readLong() == size && in.readLong() == modified;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    void invalidate(String fileName) {
+        try {
+            Files.deleteIfExists(thumbPath(fileName));
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private Path thumbPath(String fileName) {
+        return dir.resolve(fileName + ".thumb");
+    }
+
+    private BufferedImage read(Path path, long size, long modified) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readLong() != size || in.readLong() != modified) {
+                return null;
+            }
+            long start = READ_TIMER.start();
+            BufferedImage thumb = ImageIO.read(in);
+            READ_TIMER.stop(start);
+            return thumb;
+        } catch (IOException e) {
+            // Truncated or corrupt thumbnail; it will simply be regenerated
+            return null;
+        }
+    }
+
+    private void write(Path path, BufferedImage thumb, long size, long modified) {
+        Path tmp = null;
+        try {
+            Files.createDirectories(dir);
+            tmp = Files.createTempFile(dir, "thumb", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(size);
+                out.writeLong(modified);
+                ImageIO.write(thumb, "jpg", out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The thumbnail is still shown; it just won't be cached for the next start
+            e.printStackTrace();
+            deleteQuietly(tmp);
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        if (path == null) return;
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+        }
+    }
+}
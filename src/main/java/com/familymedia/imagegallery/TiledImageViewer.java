@@ -0,0 +1,350 @@
+package com.familymedia.imagegallery;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Zoomable photo view that never holds the whole image in memory. The visible area is
+// split into tiles; each tile is decoded on demand with ImageReader region reads at the
+// subsampling the current zoom allows, and kept in the shared ImageCache.
+//
+// Ctrl + mouse wheel zooms around the cursor, dragging pans.
+class TiledImageViewer extends JComponent implements Scrollable {
+    private static final int TILE_SIZE = 512;
+    // Below this display size the whole image is one tile: one decode pass instead of many
+    private static final int SINGLE_TILE_LIMIT = 2048;
+    private static final double MIN_ZOOM = 0.02;
+    private static final double MAX_ZOOM = 4.0;
+    private static final Metrics.Timer TILE_DECODE_TIMER = Metrics.timer("image.decodeTile");
+
+    private final String fileName;
+    private final ImageCache cache;
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final ExecutorService tileLoader;
+    private final Set<String> pending = new HashSet<>();
+    private volatile int generation = 0;
+    private double zoom = 1.0;
+    private Runnable zoomListener;
+
+    TiledImageViewer(File file, ImageCache cache) throws IOException {
+        this.fileName = file.getName();
+        this.cache = cache;
+
+        input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException("Cannot open " + file.getName());
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            input.close();
+            throw new IOException("Unsupported image format: " + file.getName());
+        }
+        reader = readers.next();
+        reader.setInput(input, true, true);
+        imageWidth = reader.getWidth(0);
+        imageHeight = reader.getHeight(0);
+
+        // ImageReader is not thread-safe, so all tiles of one viewer decode on one thread
+        tileLoader = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "tile-loader");
+            t.setDaemon(true);
+            return t;
+        });
+
+        setBackground(new Color(40, 40, 40));
+        setOpaque(true);
+        installMouseHandlers();
+    }
+
+    int getImageWidth() {
+        return imageWidth;
+    }
+
+    int getImageHeight() {
+        return imageHeight;
+    }
+
+    double getZoom() {
+        return zoom;
+    }
+
+    void setZoomListener(Runnable zoomListener) {
+        this.zoomListener = zoomListener;
+    }
+
+    // Zoom that makes the whole image fit in the given area
+    double fitZoom(int width, int height) {
+        return Math.min((double) width / imageWidth, (double) height / imageHeight);
+    }
+
+    void zoomToFit() {
+        Container parent = getParent();
+        if (parent instanceof JViewport && parent.getWidth() > 0) {
+            setZoom(fitZoom(parent.getWidth(), parent.getHeight()), null);
+        }
+    }
+
+    void zoomBy(double factor) {
+        Container parent = getParent();
+        Point anchor = null;
+        if (parent instanceof JViewport) {
+            Rectangle view = ((JViewport) parent).getViewRect();
+            anchor = new Point(view.x + view.width / 2, view.y + view.height / 2);
+        }
+        setZoom(zoom * factor, anchor);
+    }
+
+    // Changes the zoom, keeping the image point under anchor (component coordinates)
+    // at the same place on screen
+    void setZoom(double newZoom, Point anchor) {
+        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
+        if (newZoom == zoom) return;
+
+        JViewport viewport = getParent() instanceof JViewport ? (JViewport) getParent() : null;
+        Point viewPos = viewport != null ? viewport.getViewPosition() : new Point();
+        double imageX = 0;
+        double imageY = 0;
+        if (anchor != null) {
+            imageX = (anchor.x - offsetX()) / zoom;
+            imageY = (anchor.y - offsetY()) / zoom;
+        }
+
+        // Tiles queued for the old zoom are no longer wanted
+        generation++;
+        pending.clear();
+        zoom = newZoom;
+        revalidate();
+
+        if (viewport != null) {
+            viewport.validate();
+            if (anchor != null) {
+                int x = (int) Math.round(imageX * zoom + offsetX() - (anchor.x - viewPos.x));
+                int y = (int) Math.round(imageY * zoom + offsetY() - (anchor.y - viewPos.y));
+                Dimension extent = viewport.getExtentSize();
+                x = Math.max(0, Math.min(x, getWidth() - extent.width));
+                y = Math.max(0, Math.min(y, getHeight() - extent.height));
+                viewport.setViewPosition(new Point(x, y));
+            }
+        }
+        repaint();
+        if (zoomListener != null) {
+            zoomListener.run();
+        }
+    }
+
+    // Stops tile loading and releases the file; call when the viewer is closed
+    void close() {
+        generation++;
+        tileLoader.execute(() -> {
+            reader.dispose();
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+        });
+        tileLoader.shutdown();
+    }
+
+    private int displayWidth() {
+        return Math.max(1, (int) Math.round(imageWidth * zoom));
+    }
+
+    private int displayHeight() {
+        return Math.max(1, (int) Math.round(imageHeight * zoom));
+    }
+
+    private int tileSize() {
+        int w = displayWidth();
+        int h = displayHeight();
+        return w <= SINGLE_TILE_LIMIT && h <= SINGLE_TILE_LIMIT ? Math.max(w, h) : TILE_SIZE;
+    }
+
+    // The image is centered when it is smaller than the viewport
+    private int offsetX() {
+        return Math.max(0, (getWidth() - displayWidth()) / 2);
+    }
+
+    private int offsetY() {
+        return Math.max(0, (getHeight() - displayHeight()) / 2);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        g.setColor(getBackground());
+        Rectangle clip = g.getClipBounds();
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+        int ox = offsetX();
+        int oy = offsetY();
+        int tile = tileSize();
+        int dispW = displayWidth();
+        int dispH = displayHeight();
+
+        int firstX = Math.max(0, (clip.x - ox) / tile);
+        int firstY = Math.max(0, (clip.y - oy) / tile);
+        int lastX = Math.min((dispW - 1) / tile, (clip.x + clip.width - ox) / tile);
+        int lastY = Math.min((dispH - 1) / tile, (clip.y + clip.height - oy) / tile);
+
+        for (int ty = firstY; ty <= lastY; ty++) {
+            for (int tx = firstX; tx <= lastX; tx++) {
+                int x = ox + tx * tile;
+                int y = oy + ty * tile;
+                BufferedImage img = tile(tx, ty, tile);
+                if (img != null) {
+                    g.drawImage(img, x, y, null);
+                } else {
+                    g.setColor(new Color(60, 60, 60));
+                    g.fillRect(x, y, Math.min(tile, dispW - tx * tile), Math.min(tile, dispH - ty * tile));
+                }
+            }
+        }
+    }
+
+    // Returns the decoded tile, or null after queueing it for decoding
+    private BufferedImage tile(int tx, int ty, int tile) {
+        String key = ImageCache.key(fileName, "tile:" + zoom + ":" + tx + ":" + ty);
+        if (pending.contains(key)) {
+            return null;
+        }
+        BufferedImage img = cache.get(key);
+        if (img != null) {
+            return img;
+        }
+
+        pending.add(key);
+        double tileZoom = zoom;
+        int tileGeneration = generation;
+        tileLoader.execute(() -> {
+            if (tileGeneration != generation) return;
+            BufferedImage decoded = null;
+            try {
+                decoded = decodeTile(tx, ty, tile, tileZoom);
+                cache.put(key, decoded);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            boolean failed = decoded == null;
+            SwingUtilities.invokeLater(() -> {
+                if (tileGeneration != generation) return;
+                // A failed tile stays pending so it is not retried on every repaint
+                if (!failed) {
+                    pending.remove(key);
+                }
+                repaint(offsetX() + tx * tile, offsetY() + ty * tile, tile, tile);
+            });
+        });
+        return null;
+    }
+
+    private BufferedImage decodeTile(int tx, int ty, int tile, double tileZoom) throws IOException {
+        int dispW = Math.max(1, (int) Math.round(imageWidth * tileZoom));
+        int dispH = Math.max(1, (int) Math.round(imageHeight * tileZoom));
+        int dispX = tx * tile;
+        int dispY = ty * tile;
+        int width = Math.min(tile, dispW - dispX);
+        int height = Math.min(tile, dispH - dispY);
+
+        int srcX = Math.min(imageWidth - 1, (int) Math.floor(dispX / tileZoom));
+        int srcY = Math.min(imageHeight - 1, (int) Math.floor(dispY / tileZoom));
+        int srcX2 = Math.min(imageWidth, (int) Math.ceil((dispX + width) / tileZoom));
+        int srcY2 = Math.min(imageHeight, (int) Math.ceil((dispY + height) / tileZoom));
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceRegion(new Rectangle(srcX, srcY, Math.max(1, srcX2 - srcX), Math.max(1, srcY2 - srcY)));
+        int step = Math.max(1, (int) Math.floor(1 / tileZoom));
+        param.setSourceSubsampling(step, step, 0, 0);
+
+        long start = TILE_DECODE_TIMER.start();
+        BufferedImage region = reader.read(0, param);
+        TILE_DECODE_TIMER.stop(start);
+        return ImageDecoder.scale(region, width, height);
+    }
+
+    private void installMouseHandlers() {
+        MouseAdapter handler = new MouseAdapter() {
+            private Point dragStart;
+
+            public void mousePressed(MouseEvent e) {
+                dragStart = e.getLocationOnScreen();
+                setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+            }
+
+            public void mouseReleased(MouseEvent e) {
+                dragStart = null;
+                setCursor(Cursor.getDefaultCursor());
+            }
+
+            public void mouseDragged(MouseEvent e) {
+                if (dragStart == null || !(getParent() instanceof JViewport)) return;
+                JViewport viewport = (JViewport) getParent();
+                Point now = e.getLocationOnScreen();
+                Point pos = viewport.getViewPosition();
+                Dimension extent = viewport.getExtentSize();
+                int x = Math.max(0, Math.min(pos.x - (now.x - dragStart.x), getWidth() - extent.width));
+                int y = Math.max(0, Math.min(pos.y - (now.y - dragStart.y), getHeight() - extent.height));
+                viewport.setViewPosition(new Point(x, y));
+                dragStart = now;
+            }
+
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isControlDown()) {
+                    setZoom(zoom * Math.pow(1.25, -e.getPreciseWheelRotation()), e.getPoint());
+                } else {
+                    // Let the scroll pane scroll as usual
+                    Container scrollPane = SwingUtilities.getAncestorOfClass(JScrollPane.class, TiledImageViewer.this);
+                    if (scrollPane != null) {
+                        scrollPane.dispatchEvent(SwingUtilities.convertMouseEvent(TiledImageViewer.this, e, scrollPane));
+                    }
+                }
+            }
+        };
+        addMouseListener(handler);
+        addMouseMotionListener(handler);
+        addMouseWheelListener(handler);
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        return new Dimension(displayWidth(), displayHeight());
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return 16;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return getParent() instanceof JViewport && getParent().getWidth() > displayWidth();
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return getParent() instanceof JViewport && getParent().getHeight() > displayHeight();
+    }
+}
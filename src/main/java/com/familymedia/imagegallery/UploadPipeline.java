@@ -0,0 +1,262 @@
+package com.familymedia.imagegallery;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+
+// Imports a batch of photos. Every file goes through copy into the BlobStore (hashing and
+// probing the header in the same pass, see StreamingCopy) and thumbnail, on a small
+// worker pool so the disk and the CPU are busy at the same time. Nothing is added to the
+// gallery here: run() returns the new ImageInfos, whose blob references are already
+// counted, and the caller commits them in one go. A cancelled run releases everything it
+// stored.
+class UploadPipeline {
+    static final String[] EXTENSIONS = {"jpg", "jpeg", "png", "gif"};
+
+    private final BlobStore blobs;
+    private final ThumbnailStore thumbnails;
+    private volatile boolean cancelled = false;
+
+    interface ProgressListener {
+        // Called from the thread running run(), after each file
+        void fileDone(int done, int total, String fileName);
+    }
+
+    static class Result {
+        final List<ImageInfo> imported = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        int duplicates = 0;
+        boolean cancelled = false;
+    }
+
+    UploadPipeline(BlobStore blobs, ThumbnailStore thumbnails) {
+        this.blobs = blobs;
+        this.thumbnails = thumbnails;
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    // The selected files, with directories expanded to the images inside them
+    static List<File> collectImages(File[] selection) {
+        List<File> files = new ArrayList<>();
+        for (File f : selection) {
+            if (f.isDirectory()) {
+                try (DirectoryStream<Path> dir = Files.newDirectoryStream(f.toPath())) {
+                    List<File> children = new ArrayList<>();
+                    for (Path p : dir) {
+                        children.add(p.toFile());
+                    }
+                    children.sort(Comparator.comparing(File::getName));
+                    files.addAll(collectImages(children.toArray(new File[0])));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            } else if (isImage(f)) {
+                files.add(f);
+            }
+        }
+        return files;
+    }
+
+    static boolean isImage(File f) {
+        String name = f.getName().toLowerCase();
+        for (String ext : EXTENSIONS) {
+            if (name.endsWith("." + ext)) return true;
+        }
+        return false;
+    }
+
+    Result run(List<File> files, String owner, String description, String tags, String album,
+               ProgressListener listener) throws IOException {
+        String uploadDate = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
+        Map<String, String> seenBlobs = new ConcurrentHashMap<>();
+        Result result = new Result();
+
+        ExecutorService workers = createWorkers();
+        CompletionService<Imported> completion = new ExecutorCompletionService<>(workers);
+        Map<Future<Imported>, File> tasks = new HashMap<>();
+        for (File file : files) {
+            tasks.put(completion.submit(() -> importFile(file, seenBlobs)), file);
+        }
+
+        List<Imported> done = new ArrayList<>();
+        try {
+            int finished = 0;
+            while (finished < files.size()) {
+                if (cancelled) break;
+                Future<Imported> future;
+                try {
+                    future = completion.poll(100, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelled = true;
+                    break;
+                }
+                if (future == null) continue;
+                finished++;
+                File source = tasks.get(future);
+                try {
+                    Imported imported = future.get();
+                    if (imported == null) {
+                        result.duplicates++;
+                    } else {
+                        done.add(imported);
+                    }
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    result.failed.add(source.getName());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    cancelled = true;
+                    break;
+                }
+                listener.fileDone(finished, files.size(), source.getName());
+            }
+        } finally {
+            workers.shutdownNow();
+            awaitQuietly(workers);
+        }
+
+        if (cancelled) {
+            // Tasks that were still running clean up after themselves; finished ones are ours
+            for (Future<Imported> future : tasks.keySet()) {
+                if (future.isDone() && !future.isCancelled()) {
+                    try {
+                        Imported imported = future.get();
+                        if (imported != null) discard(imported.blob);
+                    } catch (ExecutionException | InterruptedException ignored) {
+                    }
+                }
+            }
+            result.cancelled = true;
+            return result;
+        }
+
+        // Keep the order the files were selected in
+        Map<String, Imported> bySource = new HashMap<>();
+        for (Imported imported : done) {
+            bySource.put(imported.source.getAbsolutePath(), imported);
+        }
+        for (File file : files) {
+            Imported imported = bySource.get(file.getAbsolutePath());
+            if (imported != null) {
+                ImageInfo info = new ImageInfo(imported.fileName, description, owner, uploadDate, album, tags,
+                                               imported.blob);
+                imported.header.applyTo(info);
+                result.imported.add(info);
+            }
+        }
+        return result;
+    }
+
+    private static class Imported {
+        final File source;
+        final String fileName;
+        final String blob;
+        final ImageHeader header;
+
+        Imported(File source, String fileName, String blob, ImageHeader header) {
+            this.source = source;
+            this.fileName = fileName;
+            this.blob = blob;
+            this.header = header;
+        }
+    }
+
+    // Returns null when the same bytes were already imported in this batch
+    private Imported importFile(File source, Map<String, String> seenBlobs) throws IOException {
+        BlobStore.Stored put = blobs.put(source.toPath());
+        String blob = put.blob;
+        boolean keep = false;
+        try {
+            checkCancelled();
+            if (seenBlobs.putIfAbsent(blob, source.getName()) != null) {
+                return null;
+            }
+            File stored = blobs.path(blob).toFile();
+            if (!put.content.isImage()) {
+                // Header larger than the copy kept in memory, or not an image: ask the file
+                probe(stored);
+            }
+            ImageHeader header = put.content.header;
+            if (header == null || header.width <= 0) {
+                header = ImageHeader.read(stored);
+            }
+            checkCancelled();
+            thumbnails.load(stored);
+            checkCancelled();
+            keep = true;
+            return new Imported(source, UUID.randomUUID().toString() + "_" + source.getName(), blob, header);
+        } finally {
+            if (!keep) {
+                discard(blob);
+            }
+        }
+    }
+
+    // Reads just the header, so a corrupt or mislabelled file fails before it is committed
+    private static void probe(File file) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Not a supported image: " + file.getName());
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                if (reader.getWidth(0) <= 0 || reader.getHeight(0) <= 0) {
+                    throw new IOException("Image has no pixels: " + file.getName());
+                }
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private void checkCancelled() throws InterruptedIOException {
+        if (cancelled || Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Upload cancelled");
+        }
+    }
+
+    // Gives back the reference put() took; the bytes go only if nothing else uses them
+    private void discard(String blob) {
+        try {
+            if (blobs.release(blob)) {
+                thumbnails.invalidate(blob);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static ExecutorService createWorkers() {
+        int threads = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "upload-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    private static void awaitQuietly(ExecutorService workers) {
+        try {
+            workers.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
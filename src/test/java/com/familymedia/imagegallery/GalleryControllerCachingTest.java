@@ -0,0 +1,188 @@
+package com.familymedia.imagegallery;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+
+import com.familymedia.imagegallery.SimpleGallery.AlbumInfo;
+import com.familymedia.imagegallery.SimpleGallery.ImageInfo;
+import com.familymedia.imagegallery.SimpleGallery.ShareInfo;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Revalidating a cached photo must cost a status line and headers, never the photo again.
+// Requests go over a plain socket so the test sees exactly the bytes Tomcat writes.
+@SpringBootTest(classes = GalleryServer.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class GalleryControllerCachingTest {
+    private static final String AUTH = "Basic " + Base64.getEncoder()
+        .encodeToString("john:admin123".getBytes(StandardCharsets.UTF_8));
+
+    private static String photoId;
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void galleryData(DynamicPropertyRegistry registry) throws IOException {
+        Path dataDir = Files.createTempDirectory("gallery-test");
+        File source = dataDir.resolve("beach.jpg").toFile();
+        ImageIO.write(new BufferedImage(640, 480, BufferedImage.TYPE_INT_RGB), "jpg", source);
+
+        BlobStore blobs = new BlobStore(dataDir.resolve("blobs").toString(), dataDir.resolve("images").toString());
+        ThumbnailStore thumbs = new ThumbnailStore(dataDir.resolve("thumbs").toString());
+        UploadPipeline.Result result = new UploadPipeline(blobs, thumbs)
+            .run(Collections.singletonList(source), "John Doe", "", "", "Holiday", (done, total, name) -> {});
+        List<ImageInfo> imported = result.imported;
+        photoId = imported.get(0).fileName;
+
+        GalleryStore store = new GalleryStore(dataDir.toString());
+        store.load(new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new SearchIndex());
+        store.imagesAdded(imported);
+        store.albumAdded(new AlbumInfo("Holiday", "", "John Doe"));
+        store.shareAdded(new ShareInfo("TOKEN", "Holiday", "John Doe", "2024-01-01 10:00", "Never", "View Only", ""));
+        store.close();
+        registry.add("gallery.data-dir", dataDir::toString);
+    }
+
+    @Test
+    void originalRevalidatedByETagSendsNoBody() throws IOException {
+        Response first = get("/api/photos/" + photoId + "/original");
+        assertEquals(200, first.status);
+        assertTrue(first.body > 0);
+        assertTrue(first.header("Content-Type").startsWith("image/jpeg"));
+        String etag = first.header("ETag");
+        assertNotNull(etag);
+        assertTrue(first.header("Cache-Control").contains("immutable"));
+
+        Response repeat = get("/api/photos/" + photoId + "/original", "If-None-Match: " + etag);
+        assertEquals(304, repeat.status);
+        assertEquals(0, repeat.body);
+        assertEquals(etag, repeat.header("ETag"));
+    }
+
+    @Test
+    void originalRevalidatedByDateSendsNoBody() throws IOException {
+        Response first = get("/api/photos/" + photoId + "/original");
+        String lastModified = first.header("Last-Modified");
+        assertNotNull(lastModified);
+
+        Response repeat = get("/api/photos/" + photoId + "/original", "If-Modified-Since: " + lastModified);
+        assertEquals(304, repeat.status);
+        assertEquals(0, repeat.body);
+    }
+
+    @Test
+    void thumbnailRevalidatedSendsNoBody() throws IOException {
+        Response first = get("/api/photos/" + photoId + "/thumbnail");
+        assertEquals(200, first.status);
+        assertTrue(first.body > 0);
+
+        Response repeat = get("/api/photos/" + photoId + "/thumbnail", "If-None-Match: " + first.header("ETag"));
+        assertEquals(304, repeat.status);
+        assertEquals(0, repeat.body);
+    }
+
+    @Test
+    void sharedPhotoRevalidatedSendsNoBody() throws IOException {
+        String path = "/api/shares/TOKEN/photos/" + photoId + "/original";
+        Response first = get(path);
+        assertEquals(200, first.status);
+
+        Response repeat = get(path, "If-None-Match: " + first.header("ETag"));
+        assertEquals(304, repeat.status);
+        assertEquals(0, repeat.body);
+    }
+
+    @Test
+    void staleETagGetsTheWholePhoto() throws IOException {
+        Response first = get("/api/photos/" + photoId + "/original");
+        Response repeat = get("/api/photos/" + photoId + "/original", "If-None-Match: \"something-else\"");
+        assertEquals(200, repeat.status);
+        assertEquals(first.body, repeat.body);
+    }
+
+    @Test
+    void staleIfRangeGetsTheWholePhoto() throws IOException {
+        Response first = get("/api/photos/" + photoId + "/original");
+        Response partial = get("/api/photos/" + photoId + "/original", "Range: bytes=0-9",
+                               "If-Range: " + first.header("ETag"));
+        assertEquals(206, partial.status);
+        assertEquals(10, partial.body);
+
+        Response whole = get("/api/photos/" + photoId + "/original", "Range: bytes=0-9", "If-Range: \"something-else\"");
+        assertEquals(200, whole.status);
+        assertEquals(first.body, whole.body);
+    }
+
+    @Test
+    void listingsAreCachedBriefly() throws IOException {
+        Response photos = get("/api/photos");
+        assertEquals(200, photos.status);
+        assertEquals("max-age=10, private", photos.header("Cache-Control"));
+    }
+
+    private static class Response {
+        int status;
+        final Map<String, String> headers = new HashMap<>();
+        int body;
+
+        String header(String name) {
+            return headers.get(name.toLowerCase(Locale.ROOT));
+        }
+    }
+
+    // One request on its own connection; body is every byte after the headers
+    private Response get(String path, String... extraHeaders) throws IOException {
+        StringBuilder request = new StringBuilder();
+        request.append("GET ").append(path).append(" HTTP/1.1\r\n")
+               .append("Host: localhost\r\n")
+               .append("Authorization: ").append(AUTH).append("\r\n")
+               .append("Connection: close\r\n");
+        for (String header : extraHeaders) {
+            request.append(header).append("\r\n");
+        }
+        request.append("\r\n");
+
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        try (Socket socket = new Socket("localhost", port)) {
+            OutputStream out = socket.getOutputStream();
+            out.write(request.toString().getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            InputStream in = socket.getInputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                received.write(buffer, 0, n);
+            }
+        }
+
+        String raw = new String(received.toByteArray(), StandardCharsets.ISO_8859_1);
+        int headerEnd = raw.indexOf("\r\n\r\n");
+        assertTrue(headerEnd > 0, "No complete response headers");
+        String[] lines = raw.substring(0, headerEnd).split("\r\n");
+        Response response = new Response();
+        response.status = Integer.parseInt(lines[0].split(" ")[1]);
+        for (int i = 1; i < lines.length; i++) {
+            int colon = lines[i].indexOf(':');
+            response.headers.put(lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT), lines[i].substring(colon + 1).trim());
+        }
+        response.body = received.size() - (headerEnd + 4);
+        return response;
+    }
+}